@@ -0,0 +1,82 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ccimr.types.DataPoint;
+import ccimr.types.DataPointVector;
+
+/**
+  * Distance kernels: complexDistance from every point to k centroids (the assignment step)
+  * and withinT1 between every canopy center and k centroids (the canopy setup step).
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DataPointBenchmark {
+
+	@Param({"100000"})
+	public int numPoints;
+
+	@Param({"1000"})
+	public int numCanopies;
+
+	@Param({"100", "1000"})
+	public int k;
+
+	private DataPointVector points, canopyCenters, centroids;
+
+	@Setup
+	public void setUp() {
+		SyntheticData data = new SyntheticData(42);
+		points = data.points(numPoints);
+		canopyCenters = data.points(numCanopies);
+		centroids = data.points(k);
+	}
+
+	@Benchmark
+	public double complexDistance() {
+		double total = 0;
+		for(int i = 0; i < points.size(); i++) {
+			int year = points.getYear(i), temperature = points.getTemperature(i);
+			double minDistance = Double.MAX_VALUE;
+			for(int j = 0; j < centroids.size(); j++) {
+				minDistance = Math.min(minDistance, DataPoint.complexDistance(year, temperature,
+						centroids.getYear(j), centroids.getTemperature(j)));
+			}
+			total += minDistance;
+		}
+		return total;
+	}
+
+	@Benchmark
+	public int withinT1() {
+		int within = 0;
+		for(int i = 0; i < canopyCenters.size(); i++) {
+			int temperature = canopyCenters.getTemperature(i);
+			for(int j = 0; j < centroids.size(); j++) {
+				if(DataPoint.withinT1(temperature, centroids.getTemperature(j))) {
+					within++;
+				}
+			}
+		}
+		return within;
+	}
+}
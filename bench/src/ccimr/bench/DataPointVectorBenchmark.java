@@ -0,0 +1,59 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cgl.imr.base.SerializationException;
+
+import ccimr.types.DataPointVector;
+
+/**
+  * Serialization of a DataPointVector, at the sizes of a broadcast centroid vector (k)
+  * and of a large mapper partition.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DataPointVectorBenchmark {
+
+	@Param({"1000", "100000", "1000000"})
+	public int numPoints;
+
+	private DataPointVector vector;
+	private byte[] bytes;
+
+	@Setup
+	public void setUp() throws SerializationException {
+		vector = new SyntheticData(42).centroidSums(numPoints, 1000);
+		bytes = vector.getBytes();
+	}
+
+	@Benchmark
+	public byte[] getBytes() throws SerializationException {
+		return vector.getBytes();
+	}
+
+	@Benchmark
+	public DataPointVector fromBytes() throws SerializationException {
+		DataPointVector decoded = new DataPointVector();
+		decoded.fromBytes(bytes);
+		return decoded;
+	}
+}
@@ -0,0 +1,185 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import cgl.imr.base.SerializationException;
+
+import ccimr.types.DataPointVector;
+
+/**
+  * Round-trip fuzz of the DataPointVector wire format, run by the fuzz target of the Makefile.
+  * Random vectors of several shapes (random ints, [year, temperature] data, sorted, mostly empty, extreme values,
+  * and large enough to be deflated) must come back exactly from fromBytes() and sumBytes(). Truncated and
+  * corrupted copies of their bytes, and the regression payloads below, must either decode or fail with a
+  * SerializationException. Exits with status 1 at the first mismatch or other exception.
+  *
+  * Usage: DataPointVectorFuzz [number of vectors [seed]]
+  */
+public class DataPointVectorFuzz {
+
+	/**
+	  * Flags of the marshalled form, as in DataPointVector.
+	  */
+	private static final int SPARSE = 32;
+
+	/**
+	  * Payloads that once failed with something other than a SerializationException.
+	  */
+	private static final byte[][] REGRESSIONS = {
+		// Varint header of 2^31 - 1 points with a one byte body: the columns were allocated before the body was read
+		{ 1, 1, 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0 },
+		// Sparse body too short for its number of entries: IndexOutOfBoundsException from ByteBuffer.getInt
+		{ 1, 33, 0, 0, 0, 5, 0, 0 }
+	};
+
+	public static void main(String[] args) throws SerializationException {
+		int numVectors = (args.length > 0 ? Integer.parseInt(args[0]) : 10000);
+		long seed = (args.length > 1 ? Long.parseLong(args[1]) : 42);
+		Random random = new Random(seed);
+
+		for(byte[] bytes : REGRESSIONS) {
+			checkCorrupt(bytes, "regression " + Arrays.toString(bytes));
+		}
+		for(int n = 0; n < numVectors; n++) {
+			DataPointVector.setDeflate(random.nextBoolean());
+			DataPointVector vector = randomVector(random);
+			byte[] bytes = vector.getBytes();
+			checkRoundTrip(vector, bytes, random, "vector " + n);
+			checkCorrupt(Arrays.copyOf(bytes, random.nextInt(bytes.length)), "truncated vector " + n);
+			checkCorrupt(corrupt(bytes, random), "corrupted vector " + n);
+		}
+		DataPointVector.setDeflate(false);
+		System.out.println(numVectors + " vectors and " + REGRESSIONS.length + " regressions passed, seed " + seed + ".");
+	}
+
+	/**
+	  * Returns a vector of a random shape, mostly small and sometimes large enough for its body to be deflated.
+	  */
+	private static DataPointVector randomVector(Random random) {
+		int size = (random.nextInt(20) == 0 ? 5000 + random.nextInt(30000) : random.nextInt(300));
+		int shape = random.nextInt(5);
+		DataPointVector vector = new DataPointVector();
+		int year = 1900;
+		for(int i = 0; i < size; i++) {
+			switch(shape) {
+			case 0:
+				vector.add(random.nextInt(), random.nextInt(), random.nextInt());
+				break;
+			case 1:
+				vector.add(SyntheticData.MIN_YEAR + random.nextInt(SyntheticData.MAX_YEAR - SyntheticData.MIN_YEAR + 1),
+						SyntheticData.MIN_TEMPERATURE
+						+ random.nextInt(SyntheticData.MAX_TEMPERATURE - SyntheticData.MIN_TEMPERATURE + 1),
+						random.nextInt(1000));
+				break;
+			case 2:
+				year += random.nextInt(3);
+				vector.add(year, i, 1);
+				break;
+			case 3:
+				if(random.nextInt(10) == 0) {
+					vector.add(random.nextInt(), random.nextInt(1000), random.nextInt(2));
+				} else {
+					vector.add(0, 0, 0);
+				}
+				break;
+			default:
+				vector.add(extreme(random), extreme(random), extreme(random));
+			}
+		}
+		return vector;
+	}
+
+	private static int extreme(Random random) {
+		int[] values = { 0, 1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE };
+		return values[random.nextInt(values.length)];
+	}
+
+	/**
+	  * Checks that the bytes of a vector decode back to it, both into a new vector and into one already holding
+	  * more points, and that sumBytes() adds it to accumulators holding other values.
+	  */
+	private static void checkRoundTrip(DataPointVector vector, byte[] bytes, Random random, String name)
+	throws SerializationException {
+		int size = vector.size();
+		if(DataPointVector.sizeOf(bytes) != size) {
+			fail(name + ": sizeOf() gave " + DataPointVector.sizeOf(bytes) + " for " + size + " points");
+		}
+
+		DataPointVector decoded = new DataPointVector();
+		decoded.fromBytes(bytes);
+		checkEqual(vector, decoded, name + " fromBytes()");
+		DataPointVector reused = randomVector(random);
+		reused.fromBytes(bytes);
+		checkEqual(vector, reused, name + " fromBytes() into a used vector");
+
+		int length = size + random.nextInt(3);
+		long[][] sums = new long[3][length];
+		long[][] initial = new long[3][length];
+		for(int c = 0; c < 3; c++) {
+			for(int i = 0; i < length; i++) {
+				initial[c][i] = sums[c][i] = random.nextInt();
+			}
+		}
+		DataPointVector.sumBytes(bytes, sums[0], sums[1], sums[2]);
+		for(int i = 0; i < length; i++) {
+			boolean point = i < size;
+			if(sums[0][i] != initial[0][i] + (point ? vector.getYear(i) : 0)
+					|| sums[1][i] != initial[1][i] + (point ? vector.getTemperature(i) : 0)
+					|| sums[2][i] != initial[2][i] + (point ? vector.getCount(i) : 0)) {
+				fail(name + ": sumBytes() differs at index " + i);
+			}
+		}
+	}
+
+	private static void checkEqual(DataPointVector expected, DataPointVector actual, String name) {
+		if(actual.size() != expected.size()) {
+			fail(name + ": " + actual.size() + " points instead of " + expected.size());
+		}
+		for(int i = 0; i < expected.size(); i++) {
+			if(actual.getYear(i) != expected.getYear(i) || actual.getTemperature(i) != expected.getTemperature(i)
+					|| actual.getCount(i) != expected.getCount(i)) {
+				fail(name + ": differs at index " + i);
+			}
+		}
+	}
+
+	/**
+	  * Returns a copy of bytes with a few random bytes replaced. The number of points of a sparse copy is left
+	  * as it was, since a sparse body may hold any number of empty points in a few bytes.
+	  */
+	private static byte[] corrupt(byte[] bytes, Random random) {
+		byte[] corrupt = bytes.clone();
+		for(int n = 1 + random.nextInt(4); n > 0; n--) {
+			corrupt[random.nextInt(corrupt.length)] = (byte) random.nextInt(256);
+		}
+		if((corrupt[1] & SPARSE) != 0) {
+			System.arraycopy(bytes, 2, corrupt, 2, 4);
+		}
+		return corrupt;
+	}
+
+	/**
+	  * Checks that bytes either decode or fail with a SerializationException, through fromBytes() and sumBytes().
+	  */
+	private static void checkCorrupt(byte[] bytes, String name) {
+		try {
+			int length = DataPointVector.sizeOf(bytes);
+			new DataPointVector().fromBytes(bytes);
+			DataPointVector.sumBytes(bytes, new long[length], new long[length], new long[length]);
+		} catch (SerializationException e) {
+			// Rejected as expected
+		} catch (Throwable t) {
+			t.printStackTrace();
+			fail(name + ": " + t);
+		}
+	}
+
+	private static void fail(String message) {
+		System.err.println("DataPointVectorFuzz: " + message);
+		System.exit(1);
+	}
+}
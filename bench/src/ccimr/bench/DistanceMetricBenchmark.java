@@ -0,0 +1,84 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ccimr.types.DensePointVector;
+import ccimr.types.DistanceMetric;
+
+/**
+  * Dense distance kernels: the distance from every point to k centroids with each DistanceMetric.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DistanceMetricBenchmark {
+
+	@Param({"10000"})
+	public int numPoints;
+
+	@Param({"100"})
+	public int k;
+
+	@Param({"16", "64", "256"})
+	public int dimensions;
+
+	@Param({"squared-euclidean", "l1", "cosine"})
+	public String metric;
+
+	private DistanceMetric distanceMetric;
+	private DensePointVector points, centroids;
+
+	@Setup
+	public void setUp() {
+		distanceMetric = DistanceMetric.forName(metric);
+		Random random = new Random(42);
+		points = randomPoints(random, numPoints);
+		centroids = randomPoints(random, k);
+	}
+
+	private DensePointVector randomPoints(Random random, int length) {
+		DensePointVector vector = new DensePointVector(dimensions);
+		double[] point = new double[dimensions];
+		for(int i = 0; i < length; i++) {
+			for(int d = 0; d < dimensions; d++) {
+				point[d] = random.nextGaussian();
+			}
+			vector.add(point, 0, 0);
+		}
+		return vector;
+	}
+
+	@Benchmark
+	public double distance() {
+		double[] pointValues = points.getValues(), centroidValues = centroids.getValues();
+		double total = 0;
+		for(int i = 0; i < points.size(); i++) {
+			double minDistance = Double.MAX_VALUE;
+			for(int j = 0; j < centroids.size(); j++) {
+				minDistance = Math.min(minDistance, distanceMetric.distance(pointValues, i * dimensions,
+						centroidValues, j * dimensions, dimensions));
+			}
+			total += minDistance;
+		}
+		return total;
+	}
+}
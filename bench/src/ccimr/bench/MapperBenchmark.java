@@ -0,0 +1,109 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.bench;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cgl.imr.base.Key;
+import cgl.imr.base.MapOutputCollector;
+import cgl.imr.base.Value;
+import cgl.imr.base.impl.JobConf;
+import cgl.imr.base.impl.MapperConf;
+import cgl.imr.data.file.FileData;
+import cgl.imr.types.BytesValue;
+
+import ccimr.clustering.ClusteringConf;
+import ccimr.clustering.ClusteringMapper;
+import ccimr.types.DataPointVector;
+
+/**
+  * One full ClusteringMapper.map() pass over a synthetic partition already loaded by configure().
+  * Unless moving is set, every invocation broadcasts the same centroids, so with bounds or canopy sums enabled this
+  * measures a converged iteration. With moving, invocations alternate between two centroid sets, so every centroid
+  * moves each time and the kept bounds and canopy sums never let the mapper skip work.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MapperBenchmark {
+
+	@Param({"1000000"})
+	public int numPoints;
+
+	@Param({"1000"})
+	public int numCanopies;
+
+	@Param({"100", "1000"})
+	public int k;
+
+	@Param({"1"})
+	public int threads;
+
+	@Param({"false", "true"})
+	public boolean bounds;
+
+	@Param({"false", "true"})
+	public boolean canopySums;
+
+	@Param({"false", "true"})
+	public boolean moving;
+
+	private File root;
+	private ClusteringMapper mapper;
+	private BytesValue[] broadcasts;
+	private int invocation;
+	private Value output;
+
+	@Setup
+	public void setUp() throws Exception {
+		SyntheticData data = new SyntheticData(42);
+		root = Files.createTempDirectory("ccimr-bench").toFile();
+		String partition = data.writePartition(root, numPoints, data.points(numCanopies));
+		broadcasts = new BytesValue[] {
+			new BytesValue(data.points(k).getBytes()),
+			new BytesValue(data.points(k).getBytes())
+		};
+
+		JobConf jobConf = new JobConf("ccimr-bench");
+		jobConf.addProperty(ClusteringConf.MAPPER_THREADS, Integer.toString(threads));
+		jobConf.addProperty(ClusteringConf.MAPPER_BOUNDS, Boolean.toString(bounds));
+		jobConf.addProperty(ClusteringConf.MAPPER_CANOPY_SUMS, Boolean.toString(canopySums));
+		mapper = new ClusteringMapper();
+		mapper.configure(jobConf, new MapperConf(0, new FileData(partition)));
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		mapper.close();
+		SyntheticData.delete(root);
+	}
+
+	@Benchmark
+	public Value map() throws Exception {
+		mapper.map(new MapOutputCollector() {
+			public void collect(Key key, Value value) {
+				output = value;
+			}
+		}, null, broadcasts[moving ? invocation++ & 1 : 0]);
+		return output;
+	}
+}
@@ -0,0 +1,77 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cgl.imr.base.Key;
+import cgl.imr.base.ReduceOutputCollector;
+import cgl.imr.base.Value;
+import cgl.imr.base.impl.JobConf;
+import cgl.imr.types.BytesValue;
+
+import ccimr.clustering.ClusteringReducer;
+import ccimr.types.ShardKey;
+
+/**
+  * ClusteringReducer.reduce() over the outputs of many map tasks, each touching a fraction of the k centroids.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReducerBenchmark {
+
+	@Param({"256"})
+	public int numMapTasks;
+
+	@Param({"1000", "100000"})
+	public int k;
+
+	@Param({"1", "0.01"})
+	public double touched;
+
+	private ClusteringReducer reducer;
+	private ShardKey key;
+	private List<Value> values;
+	private Value output;
+
+	@Setup
+	public void setUp() throws Exception {
+		SyntheticData data = new SyntheticData(42);
+		values = new ArrayList<Value>();
+		for(int i = 0; i < numMapTasks; i++) {
+			values.add(new BytesValue(data.centroidSums(k, 1000, touched).getBytes()));
+		}
+		key = new ShardKey(false, 0);
+		reducer = new ClusteringReducer();
+		reducer.configure(new JobConf("ccimr-bench"), null);
+	}
+
+	@Benchmark
+	public Value reduce() throws Exception {
+		reducer.reduce(new ReduceOutputCollector() {
+			public void collect(Key key, Value value) {
+				output = value;
+			}
+		}, key, values);
+		return output;
+	}
+}
@@ -0,0 +1,117 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+import ccimr.clustering.ClusteringDriver;
+import ccimr.types.DataPointVector;
+
+/**
+  * Generates reproducible [year, temperature] data sets shaped like the production inputs:
+  * canopy centers spread over the temperature range, data points near their canopy center
+  * and k-Means Centroids drawn from the same range.
+  */
+public class SyntheticData {
+	public static final int MIN_YEAR = 1900, MAX_YEAR = 2010;
+	public static final int MIN_TEMPERATURE = -400, MAX_TEMPERATURE = 500;
+
+	private Random random;
+
+	public SyntheticData(long seed) {
+		random = new Random(seed);
+	}
+
+	/**
+	  * Returns count random points, with all counts set to 0.
+	  */
+	public DataPointVector points(int count) {
+		DataPointVector points = new DataPointVector();
+		points.ensureCapacity(count);
+		for(int i = 0; i < count; i++) {
+			points.add(year(), temperature(), 0);
+		}
+		return points;
+	}
+
+	/**
+	  * Returns k centroid sums as a mapper would emit them, each the sum of up to maxCount points.
+	  */
+	public DataPointVector centroidSums(int k, int maxCount) {
+		return centroidSums(k, maxCount, 1);
+	}
+
+	/**
+	  * Returns k centroid sums as emitted by a mapper whose points only reach the given fraction of the centroids;
+	  * the others are left empty.
+	  */
+	public DataPointVector centroidSums(int k, int maxCount, double touched) {
+		DataPointVector sums = new DataPointVector();
+		sums.ensureCapacity(k);
+		for(int i = 0; i < k; i++) {
+			int count = (random.nextDouble() < touched ? random.nextInt(maxCount + 1) : 0);
+			sums.add(count * year(), count * temperature(), count);
+		}
+		return sums;
+	}
+
+	/**
+	  * Writes a partition of numPoints "canopyCenter\tdataPoint" lines, each point within T1 of its canopy center,
+	  * and the canopy centers file, laid out as on a Twister node: root/data/cc/input_0 and
+	  * root/data/cccenters/canopycenters.
+	  *
+	  * @return String Path to the partition file.
+	  */
+	public String writePartition(File root, int numPoints, DataPointVector canopyCenters)
+		throws IOException {
+		File partitions = new File(root, "data/cc");
+		File canopyCentersFile = new File(root, "data/" + ClusteringDriver.canopyCentersFileLocation);
+		partitions.mkdirs();
+		canopyCentersFile.getParentFile().mkdirs();
+
+		BufferedWriter writer = new BufferedWriter(new FileWriter(canopyCentersFile));
+		for(int i = 0; i < canopyCenters.size(); i++) {
+			writer.write(canopyCenters.getYear(i) + "," + canopyCenters.getTemperature(i));
+			writer.newLine();
+		}
+		writer.close();
+
+		File partition = new File(partitions, "input_0");
+		writer = new BufferedWriter(new FileWriter(partition));
+		for(int i = 0; i < numPoints; i++) {
+			int canopy = random.nextInt(canopyCenters.size());
+			int temperature = canopyCenters.getTemperature(canopy) + random.nextInt(11) - 5;
+			writer.write(canopyCenters.getYear(canopy) + "," + canopyCenters.getTemperature(canopy)
+				+ "\t" + year() + "," + temperature);
+			writer.newLine();
+		}
+		writer.close();
+		return partition.getPath();
+	}
+
+	/**
+	  * Deletes a directory tree written by writePartition().
+	  */
+	public static void delete(File file) {
+		File[] children = file.listFiles();
+		if(children != null) {
+			for(File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private int year() {
+		return MIN_YEAR + random.nextInt(MAX_YEAR - MIN_YEAR + 1);
+	}
+
+	private int temperature() {
+		return MIN_TEMPERATURE + random.nextInt(MAX_TEMPERATURE - MIN_TEMPERATURE + 1);
+	}
+}
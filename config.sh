@@ -13,11 +13,9 @@ echo "Getting cluster centroids..."
 hadoop dfs -get $BASEFOLDER/input/$CENTROIDSFILE $TWISTER_HOME/bin/centroids.txt
 
 echo "Getting canopy centers..."
-hadoop dfs -get $BASEFOLDER/output1/part* 1.txt
-echo "Removing leading tabs..."
-./removeLeadingTabs.py 1.txt
-rm 1.txt
-mv 1.txt_out canopycenters
+hadoop dfs -get $BASEFOLDER/output1 canopyparts
+java -cp dist/*.jar ccimr.dataops.Ingest canopies canopyparts canopycenters
+rm -rf canopyparts
 
 cd $TWISTER_HOME/bin
 ./twister.sh rmdir cccenters
@@ -29,6 +27,6 @@ cd $DIR
 rm canopycenters
 
 echo "Getting data..."
-hadoop dfs -get $BASEFOLDER/output2/part* 1.txt
-./loadData.sh 1.txt $1
-rm 1.txt
+hadoop dfs -get $BASEFOLDER/output2 dataparts
+./loadData.sh dataparts $1
+rm -rf dataparts
@@ -1,7 +1,5 @@
 #! /usr/bin/env bash
 
-java -cp dist/*.jar ccimr.dataops.SplitData $1 size $2 $3 $4
-
 OUTPUTFOLDER=output
 FILEFILTER=input
 
@@ -13,6 +11,14 @@ if [ $4 ]; then
 	FILEFILTER=$4
 fi
 
+INGEST_OPTS=
+if [ "$BINARY_PARTITIONS" = "1" ]; then
+	INGEST_OPTS=-Dccimr.ingest.binary=true
+fi
+
+# Parse, validate and write the partitions in one pass. $1 is a part file or a folder of part files
+java $INGEST_OPTS $JAVA_OPTS -cp dist/*.jar ccimr.dataops.Ingest data $1 size $2 $3 $4
+
 DIR=`pwd`
 
 cd $TWISTER_HOME/bin
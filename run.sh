@@ -24,4 +24,4 @@ cd $TWISTER_HOME/bin
 
 cd $PWD
 
-java -cp $cp:dist/*.jar ccimr.clustering.ClusteringDriver $TWISTER_HOME/bin/centroids.txt $1 $TWISTER_HOME/bin/cc.pf
+java $JAVA_OPTS -cp $cp:dist/*.jar ccimr.clustering.ClusteringDriver $TWISTER_HOME/bin/centroids.txt $1 $TWISTER_HOME/bin/cc.pf
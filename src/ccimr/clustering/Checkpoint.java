@@ -0,0 +1,125 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.clustering;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.BufferedInputStream;
+
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import cgl.imr.base.SerializationException;
+
+import ccimr.types.DataPointVector;
+
+/**
+  * State of a clustering run after a number of iterations, enough for the driver to resume it: the centroids,
+  * the number of iterations completed, the error of the last one and whether the run was still in its
+  * mini-batch phase.
+  * The file holds a magic number and version, the flags, the iteration count, the error and the marshalled
+  * centroids. It is written to a temporary file, synced and renamed over the previous checkpoint, so a crash
+  * while writing leaves the previous checkpoint intact.
+  */
+class Checkpoint {
+
+	private static final int MAGIC = 0x43434B50;
+	private static final int VERSION = 1;
+	private static final int SAMPLED = 1;
+
+	/**
+	  * Number of iterations completed, error of the last one and whether it was a mini-batch iteration.
+	  */
+	long iterations;
+	double error;
+	boolean sampled;
+
+	/**
+	  * Centroids after the last completed iteration.
+	  */
+	DataPointVector centroids;
+
+	Checkpoint(long iterations, double error, boolean sampled, DataPointVector centroids) {
+		this.iterations = iterations;
+		this.error = error;
+		this.sampled = sampled;
+		this.centroids = centroids;
+	}
+
+	/**
+	  * Writes the checkpoint atomically, replacing the file if it exists.
+	  *
+	  * @param file Path of the checkpoint.
+	  */
+	void write(File file)
+	throws IOException {
+		byte[] centroidBytes;
+		try {
+			centroidBytes = centroids.getBytes();
+		} catch (SerializationException e) {
+			throw new IOException(e);
+		}
+
+		File temporary = new File(file.getPath() + ".tmp");
+		FileOutputStream stream = new FileOutputStream(temporary);
+		try {
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(sampled ? SAMPLED : 0);
+			output.writeLong(iterations);
+			output.writeDouble(error);
+			output.writeInt(centroidBytes.length);
+			output.write(centroidBytes);
+			output.flush();
+			stream.getFD().sync();
+		} finally {
+			stream.close();
+		}
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	  * Reads a checkpoint written by write().
+	  *
+	  * @param file Path of the checkpoint.
+	  * @return Checkpoint The checkpoint.
+	  */
+	static Checkpoint read(File file)
+	throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if(input.readInt() != MAGIC) {
+				throw new IOException(file + " is not a clustering checkpoint");
+			}
+			int version = input.readInt();
+			if(version != VERSION) {
+				throw new IOException("Unsupported checkpoint version " + version + " in " + file);
+			}
+			int flags = input.readInt();
+			long iterations = input.readLong();
+			double error = input.readDouble();
+			int length = input.readInt();
+			if(length < 0 || length > file.length()) {
+				throw new IOException("Invalid checkpoint " + file + ": " + length + " bytes of centroids");
+			}
+			byte[] centroidBytes = new byte[length];
+			input.readFully(centroidBytes);
+
+			DataPointVector centroids = new DataPointVector();
+			centroids.fromBytes(centroidBytes);
+			return new Checkpoint(iterations, error, (flags & SAMPLED) != 0, centroids);
+		} catch (SerializationException e) {
+			throw new IOException("Invalid checkpoint " + file + ": " + e.getMessage());
+		} finally {
+			input.close();
+		}
+	}
+}
@@ -5,6 +5,7 @@ package ccimr.clustering;
 
 import java.util.Iterator;
 import java.util.Map;
+import java.util.TreeMap;
 
 import cgl.imr.base.Combiner;
 import cgl.imr.base.Key;
@@ -13,30 +14,94 @@ import cgl.imr.base.TwisterException;
 import cgl.imr.base.Value;
 import cgl.imr.base.impl.JobConf;
 import cgl.imr.types.BytesValue;
+import cgl.imr.types.StringKey;
 
 import ccimr.types.DataPointVector;
+import ccimr.types.LabelReport;
+import ccimr.types.MapTaskMetrics;
+import ccimr.types.SeedingStep;
+import ccimr.types.ShardKey;
 
 public class ClusteringCombiner implements Combiner {
 
 	DataPointVector results;
 
+	/**
+	  * Work of the map tasks in the last iteration (empty unless ccimr.metrics.file is set), and the time
+	  * combine() took.
+	  */
+	MapTaskMetrics metrics;
+	long combineNanos;
+
+	/**
+	  * Answer of the job to a k-means|| seeding step, when the last broadcast was one.
+	  */
+	SeedingStep seeding;
+
+	/**
+	  * Label files written by the map tasks, when the last broadcast was the final labelling pass.
+	  */
+	LabelReport labels;
+
 	public ClusteringCombiner() {
 		results = new DataPointVector();
+		metrics = new MapTaskMetrics();
 	}
 
 	public void close() throws TwisterException {
 	}
 
 	public void combine(Map<Key, Value> keyValues) throws TwisterException {
-		assert (keyValues.size() == 1); // There should be a single value here.
+		long beginTime = System.nanoTime();
+		// There should be one value per shard of centroids here, and the metrics if enabled.
+		StringKey metricsKey = new StringKey(ClusteringMapper.METRICS_KEY);
+		StringKey seedingKey = new StringKey(ClusteringMapper.SEEDING_KEY);
+		StringKey labelsKey = new StringKey(ClusteringMapper.LABELS_KEY);
+		this.seeding = null;
+		this.labels = null;
+		this.metrics = new MapTaskMetrics();
+		TreeMap<Integer, DataPointVector> shards = new TreeMap<Integer, DataPointVector>();
+		int numCentroids = 0;
 		Iterator<Key> ite = keyValues.keySet().iterator();
-		Key key = ite.next();
-		BytesValue val = (BytesValue) keyValues.get(key);
 		try {
-			this.results.fromBytes(val.getBytes());
+			while(ite.hasNext()) {
+				Key key = ite.next();
+				BytesValue val = (BytesValue) keyValues.get(key);
+				if(metricsKey.equals(key)) {
+					this.metrics.fromBytes(val.getBytes());
+				} else if(labelsKey.equals(key)) {
+					this.labels = new LabelReport();
+					this.labels.fromBytes(val.getBytes());
+				} else if(seedingKey.equals(key)) {
+					this.seeding = new SeedingStep();
+					this.seeding.fromBytes(val.getBytes());
+				} else {
+					DataPointVector shard = new DataPointVector();
+					shard.fromBytes(val.getBytes());
+					shards.put(((ShardKey) key).getShard(), shard);
+					numCentroids += shard.size();
+				}
+			}
 		} catch (SerializationException e) {
 			throw new TwisterException(e);
 		}
+		if(this.seeding != null || this.labels != null) {
+			combineNanos = System.nanoTime() - beginTime;
+			return;
+		}
+		if(shards.isEmpty() || shards.lastKey() != shards.size() - 1) {
+			throw new TwisterException("Combiner received shards " + shards.keySet() + " of the centroids");
+		}
+
+		// Use a fresh vector each time, the driver keeps the previous results to compute the error
+		this.results = new DataPointVector();
+		this.results.ensureCapacity(numCentroids);
+		for(DataPointVector shard : shards.values()) {
+			for(int i = 0; i < shard.size(); i++) {
+				this.results.add(shard.getYear(i), shard.getTemperature(i), shard.getCount(i));
+			}
+		}
+		combineNanos = System.nanoTime() - beginTime;
 	}
 
 	public void configure(JobConf jobConf) throws TwisterException {
@@ -45,4 +110,26 @@ public class ClusteringCombiner implements Combiner {
 	public DataPointVector getResults() {
 		return results;
 	}
+
+	public SeedingStep getSeeding() {
+		return seeding;
+	}
+
+	/**
+	  * Returns the totals of the label files written by the last labelling pass.
+	  */
+	public LabelReport getLabels() {
+		return labels;
+	}
+
+	public MapTaskMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	  * Returns the time the last combine() took, in nanoseconds.
+	  */
+	public long getCombineNanos() {
+		return combineNanos;
+	}
 }
@@ -0,0 +1,283 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.clustering;
+
+import cgl.imr.base.impl.JobConf;
+
+import ccimr.types.DataPoint;
+import ccimr.types.DistanceMetric;
+
+/**
+  * Names and defaults of the optional job properties understood by the clustering tasks.
+  * The driver copies each property from the Java system properties (-Dname=value) into the JobConf,
+  * and the tasks read them back in configure().
+  */
+public class ClusteringConf {
+
+	/**
+	  * Number of threads a mapper uses to assign its partition. 1 runs map() serially.
+	  */
+	public static final String MAPPER_THREADS = "ccimr.mapper.threads";
+	public static final int DEFAULT_MAPPER_THREADS = 1;
+
+	/**
+	  * Number of reduce tasks. Map tasks split their sums into this many shards of consecutive centroid indices,
+	  * each reduced on its own, and the combiner puts the shards back together in index order.
+	  */
+	public static final String REDUCERS = "ccimr.reducers";
+	public static final int DEFAULT_REDUCERS = 1;
+
+	/**
+	  * If true, a mapper keeps per-point distance bounds across iterations and skips the distance
+	  * computations for points that provably keep their centroid. Costs 20 bytes per point.
+	  */
+	public static final String MAPPER_BOUNDS = "ccimr.mapper.bounds";
+	public static final boolean DEFAULT_MAPPER_BOUNDS = false;
+
+	/**
+	  * If true, a mapper keeps the sums and counts each canopy contributed in the previous iteration, and reuses
+	  * them instead of assigning the canopy's points again when none of its candidate centroids moved or changed.
+	  * Costs 12 bytes per candidate centroid of every canopy.
+	  */
+	public static final String MAPPER_CANOPY_SUMS = "ccimr.mapper.canopysums";
+	public static final boolean DEFAULT_MAPPER_CANOPY_SUMS = false;
+
+	/**
+	  * If true, a mapper reading a text partition keeps a binary copy of it next to the text file
+	  * and loads that copy on later runs instead of parsing the text again.
+	  */
+	public static final String PARTITION_CACHE = "ccimr.partition.cache";
+	public static final boolean DEFAULT_PARTITION_CACHE = false;
+
+	/**
+	  * If true, the driver broadcasts only the centroids that moved more than DELTA_TOLERANCE
+	  * (complexDistance) since the previous iteration, and map tasks update their cached centroids.
+	  */
+	public static final String DELTA_BROADCAST = "ccimr.delta.broadcast";
+	public static final boolean DEFAULT_DELTA_BROADCAST = false;
+	public static final String DELTA_TOLERANCE = "ccimr.delta.tolerance";
+	public static final double DEFAULT_DELTA_TOLERANCE = 0;
+
+	/**
+	  * Mini-batch k-Means: if MINIBATCH_FRACTION is above 0, every map task assigns a random sample of about that
+	  * fraction of its points per iteration (drawn from a generator seeded with MINIBATCH_SEED and the map task
+	  * number) and the reducer moves each centroid towards the mean of its sample with a learning rate of the
+	  * sample count over all points the centroid was given so far. Once the centroids converge, the driver runs
+	  * up to MINIBATCH_POLISH full iterations.
+	  */
+	public static final String MINIBATCH_FRACTION = "ccimr.minibatch.fraction";
+	public static final double DEFAULT_MINIBATCH_FRACTION = 0;
+	public static final String MINIBATCH_SEED = "ccimr.minibatch.seed";
+	public static final int DEFAULT_MINIBATCH_SEED = 0;
+	public static final String MINIBATCH_POLISH = "ccimr.minibatch.polish";
+	public static final int DEFAULT_MINIBATCH_POLISH = 0;
+
+	/**
+	  * If set, the driver appends one JSON line per iteration to this file, with the time spent in each phase, the
+	  * broadcast and map output sizes, the work of every map task and the centroid movement. Map tasks send their
+	  * part to the driver only when it is set.
+	  */
+	public static final String METRICS_FILE = "ccimr.metrics.file";
+
+	/**
+	  * If true, the driver and the tasks deflate DataPointVector payloads (broadcasts and map outputs) of
+	  * 64 KiB or more, see DataPointVector.setDeflate().
+	  */
+	public static final String WIRE_DEFLATE = "ccimr.wire.deflate";
+	public static final boolean DEFAULT_WIRE_DEFLATE = false;
+
+	/**
+	  * Total error below which the driver stops iterating, default DataPoint.CONVERGENCE_THRESHOLD.
+	  */
+	public static final String CONVERGENCE_THRESHOLD = "ccimr.convergence.threshold";
+	public static final double DEFAULT_CONVERGENCE_THRESHOLD = DataPoint.CONVERGENCE_THRESHOLD;
+
+	/**
+	  * If set, the driver writes a checkpoint (centroids, iterations completed, last error) to this file every
+	  * ccimr.checkpoint.interval iterations and when the run completes. With ccimr.resume true, the driver
+	  * starts from the checkpoint, if it exists, instead of from the initial centroids.
+	  */
+	public static final String CHECKPOINT_FILE = "ccimr.checkpoint.file";
+	public static final String CHECKPOINT_INTERVAL = "ccimr.checkpoint.interval";
+	public static final int DEFAULT_CHECKPOINT_INTERVAL = 1;
+	public static final String RESUME = "ccimr.resume";
+	public static final boolean DEFAULT_RESUME = false;
+
+	/**
+	  * If true, the driver updates the centroids and counts of the checkpoint in ccimr.checkpoint.file with the
+	  * points of the partitions it is given, typically only the newly added ones: every iteration assigns the new
+	  * points and merges their means into the previous centroids weighted by the counts. The merged centroids
+	  * are then refined with at most ccimr.incremental.refine full iterations over all the data, given by its
+	  * partition file (or local folder) ccimr.incremental.partitions and its number of map tasks
+	  * ccimr.incremental.maptasks (default: as many as for the new partitions). The checkpoint is replaced
+	  * once the points are merged.
+	  */
+	public static final String INCREMENTAL = "ccimr.incremental";
+	public static final boolean DEFAULT_INCREMENTAL = false;
+	public static final String INCREMENTAL_REFINE = "ccimr.incremental.refine";
+	public static final int DEFAULT_INCREMENTAL_REFINE = 0;
+	public static final String INCREMENTAL_PARTITIONS = "ccimr.incremental.partitions";
+	public static final String INCREMENTAL_MAP_TASKS = "ccimr.incremental.maptasks";
+
+	/**
+	  * If set, once the centroids converge the map tasks write the label (centroid index) of each of their points to
+	  * a file of this directory, labels-<map task number> followed by .txt or .bin, as described in
+	  * ccimr.dataops.LabelFile. The format is text or binary, and distances adds the distance of each point to its
+	  * centroid.
+	  */
+	public static final String LABELS_DIR = "ccimr.labels.dir";
+	public static final String LABELS_FORMAT = "ccimr.labels.format";
+	public static final String DEFAULT_LABELS_FORMAT = "text";
+	public static final String LABELS_DISTANCES = "ccimr.labels.distances";
+	public static final boolean DEFAULT_LABELS_DISTANCES = false;
+
+	/**
+	  * k-means|| seeding, run on the map tasks before the first iteration when ccimr.seeding.rounds is positive
+	  * and the run does not resume from a checkpoint: the number of oversampling rounds, the number of centroids
+	  * to seed (default: the number of centroids in the centroid file), the oversampling factor (points drawn per
+	  * round, as a multiple of k), and the seed of the random draws. With ccimr.seeding.canopy set, a point's
+	  * distance to the candidates only counts those within T1 of its canopy center once there are any, so that
+	  * the candidates cover the canopies the iterations assign within.
+	  */
+	public static final String SEEDING_ROUNDS = "ccimr.seeding.rounds";
+	public static final int DEFAULT_SEEDING_ROUNDS = 0;
+	public static final String SEEDING_K = "ccimr.seeding.k";
+	public static final int DEFAULT_SEEDING_K = 0;
+	public static final String SEEDING_OVERSAMPLING = "ccimr.seeding.oversampling";
+	public static final double DEFAULT_SEEDING_OVERSAMPLING = 2;
+	public static final String SEEDING_SEED = "ccimr.seeding.seed";
+	public static final int DEFAULT_SEEDING_SEED = 0;
+	public static final String SEEDING_CANOPY = "ccimr.seeding.canopy";
+	public static final boolean DEFAULT_SEEDING_CANOPY = false;
+
+	/**
+	  * Number of coordinates of every point. 0 runs the [year, temperature] tasks on DataPoint; a positive
+	  * value runs the dense tasks (DenseClusteringMapper etc.) on comma separated points of that dimension.
+	  */
+	public static final String DIMENSIONS = "ccimr.dimensions";
+	public static final int DEFAULT_DIMENSIONS = 0;
+
+	/**
+	  * Dense tasks only: the cheap metric deciding which centroids lie within T1 of a canopy center,
+	  * the expensive metric assigning points to centroids (names as in DistanceMetric), and T1.
+	  */
+	public static final String CHEAP_METRIC = "ccimr.metric.cheap";
+	public static final DistanceMetric DEFAULT_CHEAP_METRIC = DistanceMetric.L1;
+	public static final String EXPENSIVE_METRIC = "ccimr.metric.expensive";
+	public static final DistanceMetric DEFAULT_EXPENSIVE_METRIC = DistanceMetric.SQUARED_EUCLIDEAN;
+	public static final String T1 = "ccimr.t1";
+	public static final double DEFAULT_T1 = DataPoint.T1;
+
+	/**
+	  * Driver-only settings: if true, the job runs in this JVM on a ccimr.local.LocalTwisterDriver
+	  * with the given number of threads (default: number of processors), instead of on Twister.
+	  * The partition file argument may then also be a directory of partition files.
+	  */
+	public static final String LOCAL = "ccimr.local";
+	public static final String LOCAL_THREADS = "ccimr.local.threads";
+
+	/**
+	  * All properties copied from the system properties by copySystemProperties().
+	  */
+	private static final String[] PROPERTIES = {
+		MAPPER_THREADS,
+		REDUCERS,
+		MAPPER_BOUNDS,
+		MAPPER_CANOPY_SUMS,
+		PARTITION_CACHE,
+		DELTA_BROADCAST,
+		DELTA_TOLERANCE,
+		MINIBATCH_FRACTION,
+		MINIBATCH_SEED,
+		MINIBATCH_POLISH,
+		METRICS_FILE,
+		WIRE_DEFLATE,
+		CONVERGENCE_THRESHOLD,
+		CHECKPOINT_FILE,
+		CHECKPOINT_INTERVAL,
+		RESUME,
+		INCREMENTAL,
+		INCREMENTAL_REFINE,
+		INCREMENTAL_PARTITIONS,
+		INCREMENTAL_MAP_TASKS,
+		LABELS_DIR,
+		LABELS_FORMAT,
+		LABELS_DISTANCES,
+		SEEDING_ROUNDS,
+		SEEDING_K,
+		SEEDING_OVERSAMPLING,
+		SEEDING_SEED,
+		SEEDING_CANOPY,
+		DIMENSIONS,
+		CHEAP_METRIC,
+		EXPENSIVE_METRIC,
+		T1
+	};
+
+	/**
+	  * Copies every clustering property set as a Java system property into the JobConf.
+	  *
+	  * @param jobConf JobConf to add the properties to.
+	  */
+	public static void copySystemProperties(JobConf jobConf) {
+		for(String property : PROPERTIES) {
+			String value = System.getProperty(property);
+			if(value != null) {
+				jobConf.addProperty(property, value);
+			}
+		}
+	}
+
+	/**
+	  * Reads an integer property from the JobConf.
+	  *
+	  * @param jobConf JobConf to read the property from.
+	  * @param property Name of the property.
+	  * @param defaultValue Value returned when the property is not set.
+	  * @return int Value of the property.
+	  */
+	public static int getInt(JobConf jobConf, String property, int defaultValue) {
+		String value = jobConf.getProperty(property);
+		return (value == null ? defaultValue : Integer.parseInt(value.trim()));
+	}
+
+	/**
+	  * Reads a double property from the JobConf.
+	  *
+	  * @param jobConf JobConf to read the property from.
+	  * @param property Name of the property.
+	  * @param defaultValue Value returned when the property is not set.
+	  * @return double Value of the property.
+	  */
+	public static double getDouble(JobConf jobConf, String property, double defaultValue) {
+		String value = jobConf.getProperty(property);
+		return (value == null ? defaultValue : Double.parseDouble(value.trim()));
+	}
+
+	/**
+	  * Reads a DistanceMetric property, given by name, from the JobConf.
+	  *
+	  * @param jobConf JobConf to read the property from.
+	  * @param property Name of the property.
+	  * @param defaultValue Value returned when the property is not set.
+	  * @return DistanceMetric Value of the property.
+	  */
+	public static DistanceMetric getMetric(JobConf jobConf, String property, DistanceMetric defaultValue) {
+		String value = jobConf.getProperty(property);
+		return (value == null ? defaultValue : DistanceMetric.forName(value));
+	}
+
+	/**
+	  * Reads a boolean property from the JobConf.
+	  *
+	  * @param jobConf JobConf to read the property from.
+	  * @param property Name of the property.
+	  * @param defaultValue Value returned when the property is not set.
+	  * @return boolean Value of the property.
+	  */
+	public static boolean getBoolean(JobConf jobConf, String property, boolean defaultValue) {
+		String value = jobConf.getProperty(property);
+		return (value == null ? defaultValue : Boolean.parseBoolean(value.trim()));
+	}
+}
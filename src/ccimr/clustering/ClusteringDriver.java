@@ -5,16 +5,26 @@ package ccimr.clustering;
 
 import java.io.IOException;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 
 import java.util.ArrayList;
 
+import cgl.imr.base.Combiner;
+import cgl.imr.base.MapTask;
+import cgl.imr.base.ReduceTask;
+import cgl.imr.base.TwisterException;
 import cgl.imr.base.TwisterMonitor;
+import cgl.imr.base.Value;
 import cgl.imr.base.impl.JobConf;
 import cgl.imr.client.TwisterDriver;
+import cgl.imr.types.BytesValue;
 
+import ccimr.local.LocalTwisterDriver;
+import ccimr.types.CentroidDelta;
 import ccimr.types.DataPoint;
 import ccimr.types.DataPointVector;
+import ccimr.types.LabelReport;
 
 public class ClusteringDriver {
 
@@ -38,11 +48,14 @@ public class ClusteringDriver {
 		int numMapTasks = Integer.parseInt(args[1]);
 		String partitionFile = args[2];
 
-		ClusteringDriver client;
 		try {
-			client = new ClusteringDriver();
 			double beginTime = System.currentTimeMillis();
-			client.driveMapReduce(partitionFile, numMapTasks, centroidFile);
+			// A positive ccimr.dimensions selects the dense N-dimensional tasks
+			if(Integer.getInteger(ClusteringConf.DIMENSIONS, ClusteringConf.DEFAULT_DIMENSIONS) > 0) {
+				new DenseClusteringDriver().driveMapReduce(partitionFile, numMapTasks, centroidFile);
+			} else {
+				new ClusteringDriver().driveMapReduce(partitionFile, numMapTasks, centroidFile);
+			}
 			double endTime = System.currentTimeMillis();
 			System.out
 					.println("------------------------------------------------------");
@@ -59,19 +72,24 @@ public class ClusteringDriver {
 	public void driveMapReduce(String partitionFile, int numMapTasks,
 			String centroidFile) throws Exception {
 		long beforeTime = System.currentTimeMillis();
-		int numReducers = 1; // we need only one reducer for the above
-
 		// JobConfigurations
 		JobConf jobConf = new JobConf("canopyclustering-map-reduce");
 		jobConf.setMapperClass(ClusteringMapper.class);
 		jobConf.setReducerClass(ClusteringReducer.class);
 		jobConf.setCombinerClass(ClusteringCombiner.class);
 		jobConf.setNumMapTasks(numMapTasks);
-		jobConf.setNumReduceTasks(numReducers);
 		//jobConf.setFaultTolerance();
+		ClusteringConf.copySystemProperties(jobConf);
 
-		TwisterDriver driver = new TwisterDriver(jobConf);
-		driver.configureMaps(partitionFile);
+		// One reducer per shard of the centroids
+		int numReducers = Math.max(1, ClusteringConf.getInt(jobConf, ClusteringConf.REDUCERS,
+				ClusteringConf.DEFAULT_REDUCERS));
+		jobConf.setNumReduceTasks(numReducers);
+		DataPointVector.setDeflate(ClusteringConf.getBoolean(jobConf, ClusteringConf.WIRE_DEFLATE,
+				ClusteringConf.DEFAULT_WIRE_DEFLATE));
+
+		IterationDriver driver = createIterationDriver(jobConf, partitionFile, numMapTasks, ClusteringMapper.class,
+				ClusteringReducer.class, ClusteringCombiner.class, numReducers);
 
 		DataPointVector centroids = new DataPointVector();
 
@@ -88,36 +106,285 @@ public class ClusteringDriver {
 
 		double totalError = 0;
 		int loopCount = 0;
-		TwisterMonitor monitor = null;
+
+		// Checkpoints of the centroids, and the checkpoint the run resumes from
+		String checkpointFile = jobConf.getProperty(ClusteringConf.CHECKPOINT_FILE);
+		int checkpointInterval = Math.max(1, ClusteringConf.getInt(jobConf, ClusteringConf.CHECKPOINT_INTERVAL,
+				ClusteringConf.DEFAULT_CHECKPOINT_INTERVAL));
+		double threshold = ClusteringConf.getDouble(jobConf, ClusteringConf.CONVERGENCE_THRESHOLD,
+				ClusteringConf.DEFAULT_CONVERGENCE_THRESHOLD);
+		Checkpoint resumed = null;
+
+		// With incremental clustering, the centroids and counts of the previous run the new points are merged into
+		DataPointVector prior = null;
+		int refineLoops = ClusteringConf.getInt(jobConf, ClusteringConf.INCREMENTAL_REFINE,
+				ClusteringConf.DEFAULT_INCREMENTAL_REFINE);
+		boolean refining = false;
+		if(ClusteringConf.getBoolean(jobConf, ClusteringConf.INCREMENTAL, ClusteringConf.DEFAULT_INCREMENTAL)) {
+			if(checkpointFile == null || !new File(checkpointFile).exists()) {
+				throw new TwisterException("Incremental clustering needs the checkpoint of a previous run in "
+						+ ClusteringConf.CHECKPOINT_FILE);
+			}
+			if(ClusteringConf.getDouble(jobConf, ClusteringConf.MINIBATCH_FRACTION,
+					ClusteringConf.DEFAULT_MINIBATCH_FRACTION) > 0) {
+				throw new TwisterException("Incremental clustering cannot run mini-batch iterations");
+			}
+			if(refineLoops > 0 && jobConf.getProperty(ClusteringConf.INCREMENTAL_PARTITIONS) == null) {
+				throw new TwisterException("Refining an incremental update needs the partitions of all the data in "
+						+ ClusteringConf.INCREMENTAL_PARTITIONS);
+			}
+			Checkpoint previous = Checkpoint.read(new File(checkpointFile));
+			// The counts of a mini-batch iteration only cover its sample, merging with them would underweight
+			// the points of the previous run
+			if(previous.sampled) {
+				throw new TwisterException("Incremental clustering cannot start from the checkpoint of a mini-batch "
+						+ "iteration, polish the previous run with " + ClusteringConf.MINIBATCH_POLISH);
+			}
+			prior = previous.centroids;
+			centroids = new DataPointVector(prior);
+			System.out.println("Incremental update of: " + centroids);
+		} else if(checkpointFile != null && ClusteringConf.getBoolean(jobConf, ClusteringConf.RESUME,
+				ClusteringConf.DEFAULT_RESUME)) {
+			// The learning rates of mini-batch updates come from the counts the reducers kept since the first
+			// iteration, which a checkpoint does not hold
+			if(ClusteringConf.getDouble(jobConf, ClusteringConf.MINIBATCH_FRACTION,
+					ClusteringConf.DEFAULT_MINIBATCH_FRACTION) > 0) {
+				throw new TwisterException("Mini-batch runs cannot be resumed from a checkpoint");
+			}
+			File file = new File(checkpointFile);
+			if(file.exists()) {
+				resumed = Checkpoint.read(file);
+				centroids = resumed.centroids;
+				loopCount = (int) resumed.iterations;
+				totalError = resumed.error;
+				System.out.println("Resuming after " + loopCount + " loops, error " + totalError + ": " + centroids);
+			} else {
+				System.out.println("No checkpoint at " + checkpointFile + ", starting from " + centroidFile);
+			}
+		}
+
+		// Seed the centroids with k-means|| on the map tasks, unless resuming or updating
+		int seedingRounds = ClusteringConf.getInt(jobConf, ClusteringConf.SEEDING_ROUNDS,
+				ClusteringConf.DEFAULT_SEEDING_ROUNDS);
+		if(resumed == null && prior == null && seedingRounds > 0) {
+			int k = ClusteringConf.getInt(jobConf, ClusteringConf.SEEDING_K, ClusteringConf.DEFAULT_SEEDING_K);
+			k = (k > 0 ? k : centroids.size());
+			long seedingTime = System.currentTimeMillis();
+			DataPointVector seeds = KMeansParallelSeeding.seed(driver, k, seedingRounds,
+					ClusteringConf.getDouble(jobConf, ClusteringConf.SEEDING_OVERSAMPLING,
+							ClusteringConf.DEFAULT_SEEDING_OVERSAMPLING),
+					ClusteringConf.getInt(jobConf, ClusteringConf.SEEDING_SEED, ClusteringConf.DEFAULT_SEEDING_SEED));
+			// With fewer distinct points than k, the initial centroids make up the rest
+			for(int i = seeds.size(); i < k && i < centroids.size(); i++) {
+				seeds.add(centroids.getYear(i), centroids.getTemperature(i), 0);
+			}
+			centroids = seeds;
+			System.out.println("Seeded Centroids in " + ((double) (System.currentTimeMillis() - seedingTime)) / 1000
+					+ "s: " + centroids);
+		}
+
+		// With delta broadcasts, the centroids held by the map tasks
+		boolean deltaBroadcast = ClusteringConf.getBoolean(jobConf, ClusteringConf.DELTA_BROADCAST,
+				ClusteringConf.DEFAULT_DELTA_BROADCAST);
+		double deltaTolerance = ClusteringConf.getDouble(jobConf, ClusteringConf.DELTA_TOLERANCE,
+				ClusteringConf.DEFAULT_DELTA_TOLERANCE);
+		DataPointVector broadcastCentroids = null;
+
+		// With mini-batch iterations, whether the map tasks still sample and how many full iterations may follow
+		boolean miniBatch = ClusteringConf.getDouble(jobConf, ClusteringConf.MINIBATCH_FRACTION,
+				ClusteringConf.DEFAULT_MINIBATCH_FRACTION) > 0;
+		int polishLoops = ClusteringConf.getInt(jobConf, ClusteringConf.MINIBATCH_POLISH,
+				ClusteringConf.DEFAULT_MINIBATCH_POLISH);
+		boolean sampled = miniBatch;
+
+		// With a labelling pass, the map tasks expect CentroidDelta values, which carry the label flag
+		String labelsDir = jobConf.getProperty(ClusteringConf.LABELS_DIR);
+
+		String metricsFile = jobConf.getProperty(ClusteringConf.METRICS_FILE);
+		MetricsReport metrics = (metricsFile == null ? null : new MetricsReport(metricsFile));
 
 		//Main iteration for K-Means clustering
 		boolean complete = false;
 		while (!complete) {		
-			monitor = driver.runMapReduceBCast(centroids);
-			monitor.monitorTillCompletion();
-			DataPointVector newCentroids = ((ClusteringCombiner) driver.getCurrentCombiner()).getResults();
+			// Encoded once, the bytes are both broadcast and counted in the metrics
+			BytesValue broadcast;
+			if(deltaBroadcast || miniBatch || labelsDir != null) {
+				CentroidDelta delta = (broadcastCentroids == null || !deltaBroadcast ? CentroidDelta.full(loopCount, centroids)
+						: CentroidDelta.diff(loopCount, loopCount - 1, broadcastCentroids, centroids, deltaTolerance));
+				delta.setSampled(sampled);
+				broadcastCentroids = delta.applyTo(broadcastCentroids);
+				broadcast = new BytesValue(delta.getBytes());
+			} else {
+				broadcast = new BytesValue(centroids.getBytes());
+			}
+			long beginTime = System.nanoTime();
+			driver.runMapReduceBCast(broadcast);
+			long mapReduceNanos = System.nanoTime() - beginTime;
+
+			ClusteringCombiner combiner = (ClusteringCombiner) driver.getCurrentCombiner();
+			DataPointVector newCentroids = combiner.getResults();
+			if(prior != null) {
+				mergeIncrement(prior, newCentroids);
+			}
+			keepEmptyCentroids(centroids, newCentroids);
+			beginTime = System.nanoTime();
 			totalError = getError(centroids, newCentroids);
+			long errorNanos = System.nanoTime() - beginTime;
+			if(metrics != null) {
+				metrics.write(loopCount, sampled, broadcast.getBytes().length, mapReduceNanos, combiner.getCombineNanos(),
+						errorNanos, totalError, centroids, newCentroids, combiner.getMetrics());
+			}
 			centroids = newCentroids;
-			if (totalError < DataPoint.CONVERGENCE_THRESHOLD) {
+			boolean merging = (prior != null);
+			if((!sampled && miniBatch && --polishLoops <= 0) || (refining && --refineLoops <= 0)) {
 				complete = true;
+			} else if (totalError < threshold) {
+				if(sampled && polishLoops > 0) {
+					// The mini-batch updates converged, polish the centroids with full iterations
+					System.out.println("Mini-batch converged after " + (loopCount + 1) + " loops.");
+					sampled = false;
+				} else if(merging && refineLoops > 0) {
+					// The new points are merged, refine the centroids with full iterations over all the data
+					System.out.println("Incremental update converged after " + (loopCount + 1) + " loops.");
+					driver.close();
+					int allMapTasks = ClusteringConf.getInt(jobConf, ClusteringConf.INCREMENTAL_MAP_TASKS, numMapTasks);
+					jobConf.setNumMapTasks(allMapTasks);
+					driver = createIterationDriver(jobConf, jobConf.getProperty(ClusteringConf.INCREMENTAL_PARTITIONS),
+							allMapTasks, ClusteringMapper.class, ClusteringReducer.class, ClusteringCombiner.class, numReducers);
+					broadcastCentroids = null;
+					prior = null;
+					refining = true;
+				} else {
+					complete = true;
+				}
+			}
+			// An incremental update is only saved once merged, resuming from a partial merge would count points twice
+			if(checkpointFile != null && (complete || (merging ? prior == null
+					: (loopCount + 1) % checkpointInterval == 0))) {
+				new Checkpoint(loopCount + 1, totalError, sampled, centroids).write(new File(checkpointFile));
+			}
+			if(complete) {
 				break;
 			}
 			loopCount++;
 		}
+		if(labelsDir != null) {
+			// Label every point with its centroid, on the map tasks and the partitions they hold
+			long labelTime = System.currentTimeMillis();
+			CentroidDelta labels = CentroidDelta.full(loopCount + 1, centroids);
+			labels.setLabel(true);
+			driver.runMapReduceBCast(labels);
+			LabelReport written = ((ClusteringCombiner) driver.getCurrentCombiner()).getLabels();
+			System.out.println("Labelled " + written.getPoints() + " points (" + written.getUnlabelled()
+					+ " without a centroid, " + written.getSkipped() + " records skipped) in " + written.getFiles()
+					+ " files (" + written.getByteCount() + " bytes) in "
+					+ ((double) (System.currentTimeMillis() - labelTime)) / 1000 + "s");
+		}
 		// Print the test statistics
 		double timeInSeconds = ((double) (System.currentTimeMillis() - beforeTime)) / 1000;
 		System.out.println("Selected Centroids: " + centroids);
 		System.out.println("Total Time for Canopy Clustering : " + timeInSeconds);
 		System.out.println("Total loop count : " + (loopCount + 1));
-		// Close the TwisterDriver. This will close the broker connections.
+		if(metrics != null) {
+			metrics.close();
+		}
 		driver.close();
 	}
 
+	/**
+	  * Creates the IterationDriver running a job: a LocalTwisterDriver if ccimr.local is set, otherwise
+	  * a TwisterDriver. The task classes must match the ones set on the JobConf.
+	  *
+	  * @param jobConf Job configuration.
+	  * @param partitionFile Partition file, or with ccimr.local a folder of partitions.
+	  * @param numMapTasks Number of map tasks.
+	  * @param mapperClass Class of the map tasks.
+	  * @param reducerClass Class of the reduce tasks.
+	  * @param combinerClass Class of the combiner.
+	  * @param numReducers Number of reduce tasks.
+	  * @return IterationDriver The driver, with its map tasks configured.
+	  */
+	static IterationDriver createIterationDriver(JobConf jobConf, String partitionFile, int numMapTasks,
+			Class<? extends MapTask> mapperClass, Class<? extends ReduceTask> reducerClass,
+			Class<? extends Combiner> combinerClass, int numReducers) throws TwisterException {
+		if(Boolean.getBoolean(ClusteringConf.LOCAL)) {
+			LocalTwisterDriver localDriver = new LocalTwisterDriver(jobConf, mapperClass, reducerClass, combinerClass,
+					numReducers, Integer.getInteger(ClusteringConf.LOCAL_THREADS, Runtime.getRuntime().availableProcessors()));
+			localDriver.configureMaps(partitionFile, numMapTasks);
+			return localDriver;
+		}
+		return new TwisterIterationDriver(jobConf, partitionFile);
+	}
+
+	/**
+	  * Gives every centroid no point was assigned to (count 0) its previous position, so that
+	  * centroids keep their indices from one iteration to the next.
+	  *
+	  * @param cData Centroids of the previous iteration.
+	  * @param newCData Centroids computed in this iteration, updated in place.
+	  */
+	public void keepEmptyCentroids(DataPointVector cData, DataPointVector newCData) {
+		for(int i = 0; i < newCData.size(); i++) {
+			if(newCData.getCount(i) == 0) {
+				newCData.set(i, cData.getYear(i), cData.getTemperature(i), 0);
+			}
+		}
+	}
+
+	/**
+	  * Merges the centroids computed from new points into the centroids of a previous run, each weighted by its
+	  * count: c = (priorCount * priorC + newCount * newC) / (priorCount + newCount). A previous run's centroid
+	  * thus weighs as much as the points it was computed from.
+	  *
+	  * @param prior Centroids and counts of the previous run.
+	  * @param newCData Centroids and counts computed from the new points, updated in place.
+	  */
+	public void mergeIncrement(DataPointVector prior, DataPointVector newCData) {
+		for(int i = 0; i < newCData.size(); i++) {
+			long priorCount = prior.getCount(i);
+			long newCount = newCData.getCount(i);
+			if(priorCount == 0) {
+				continue;
+			}
+			long count = priorCount + newCount;
+			newCData.set(i, (int) ((priorCount * prior.getYear(i) + newCount * newCData.getYear(i)) / count),
+					(int) ((priorCount * prior.getTemperature(i) + newCount * newCData.getTemperature(i)) / count),
+					(int) Math.min(count, Integer.MAX_VALUE));
+		}
+	}
+
 	public double getError(DataPointVector cData, DataPointVector newCData) {
 		double totalError = 0;
 		for(int i = 0; i < cData.size(); i++) {
-			totalError += cData.get(i).complexDistance(newCData.get(i));
+			totalError += DataPoint.complexDistance(cData.getYear(i), cData.getTemperature(i),
+					newCData.getYear(i), newCData.getTemperature(i));
 		}
 		return totalError;
 	}
+
+	/**
+	  * IterationDriver running the iterations on a Twister deployment.
+	  */
+	private static class TwisterIterationDriver implements IterationDriver {
+		private TwisterDriver driver;
+
+		TwisterIterationDriver(JobConf jobConf, String partitionFile) throws TwisterException {
+			driver = new TwisterDriver(jobConf);
+			driver.configureMaps(partitionFile);
+		}
+
+		public void runMapReduceBCast(Value value) throws TwisterException {
+			TwisterMonitor monitor = driver.runMapReduceBCast(value);
+			monitor.monitorTillCompletion();
+		}
+
+		public Combiner getCurrentCombiner() {
+			return driver.getCurrentCombiner();
+		}
+
+		public void close() {
+			// Close the TwisterDriver. This will close the broker connections.
+			driver.close();
+		}
+	}
 }
\ No newline at end of file
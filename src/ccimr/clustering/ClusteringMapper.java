@@ -4,10 +4,17 @@
 package ccimr.clustering;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import cgl.imr.base.Key;
 import cgl.imr.base.MapOutputCollector;
@@ -21,47 +28,216 @@ import cgl.imr.data.file.FileData;
 import cgl.imr.types.BytesValue;
 import cgl.imr.types.StringKey;
 
+import ccimr.dataops.LabelFile;
+import ccimr.dataops.PartitionFile;
+import ccimr.types.CentroidDelta;
 import ccimr.types.DataPoint;
 import ccimr.types.DataPointVector;
+import ccimr.types.LabelReport;
+import ccimr.types.MapTaskMetrics;
+import ccimr.types.SeedingStep;
+import ccimr.types.ShardKey;
 
 public class ClusteringMapper implements MapTask {
 
-	private static final int CANOPY_CENTER = 0;
-	private static final int DATA_POINT = 1;
+	/**
+	  * Smallest number of points a fork-join task assigns without splitting further.
+	  */
+	private static final int MIN_CHUNK_SIZE = 4096;
+
+	/**
+	  * Slack added to the bounds on every update, so that rounding can never let a bound skip a point
+	  * whose nearest centroid is tied.
+	  */
+	private static final double BOUND_EPSILON = 1e-9;
+
+	/**
+	  * Key of the MapTaskMetrics record a map task emits when ccimr.metrics.file is set.
+	  */
+	static final String METRICS_KEY = "kmeans-metrics-key";
+
+	/**
+	  * Key of a map task's answer to a SeedingStep.
+	  */
+	static final String SEEDING_KEY = "kmeans-seeding-key";
+
+	/**
+	  * Key of the LabelReport a map task emits for the label file it wrote in the final labelling pass.
+	  */
+	static final String LABELS_KEY = "kmeans-labels-key";
 
 	private FileData fileData;
-	private DataPointVector [] data;
 	private DataPointVector canopyCenters;
 
+	/**
+	  * Data points of the partition, grouped by canopy id (index into canopyCenters).
+	  * The points of canopy c are at [canopyOffsets[c], canopyOffsets[c + 1]). Points whose canopy center
+	  * is not a known canopy can never be assigned and are dropped while loading.
+	  */
+	private DataPointVector dataPoints;
+	private int[] canopyOffsets;
+
+	/**
+	  * Canopy id of each loaded data point and the lookup used to find it, only kept until the points are grouped.
+	  */
+	private int[] pointCanopyIds;
+	private HashMap<DataPoint, Integer> canopyCenterIds;
+	private DataPoint canopyCenterProbe;
+
+	/**
+	  * k-Means Centroids of the current iteration and, per canopy id, the indices of the centroids within T1
+	  * of the canopy center. Kept across iterations so a delta broadcast only updates the affected canopies.
+	  */
+	private DataPointVector kCentroids;
+	private int[][] canopyCentroids;
+
+	/**
+	  * Canopy ids sorted by the temperature of their center, and those temperatures. withinT1 only compares
+	  * temperatures, so the canopies within T1 of a centroid are one contiguous run of this order.
+	  */
+	private int[] canopiesByTemperature;
+	private int[] sortedCanopyTemperatures;
+
+	/**
+	  * Whether the driver broadcasts CentroidDelta values, and the iteration of the centroids held.
+	  */
+	private boolean deltaBroadcast;
+	private long centroidIteration = -1;
+
+	/**
+	  * Number of threads used to assign the partition, and the pool running them when greater than 1.
+	  */
+	private int numThreads;
+	private ForkJoinPool pool;
+
+	/**
+	  * Per data point state of the bounded assignment (Hamerly), kept across iterations when
+	  * ccimr.mapper.bounds is set: the centroid the point is assigned to, an upper bound on its distance to that
+	  * centroid, and a lower bound on its distance to every other candidate centroid of its canopy.
+	  * Bounds are Euclidean distances (the square root of complexDistance), for which the triangle inequality holds.
+	  */
+	private int[] assignments;
+	private double[] upperBounds, lowerBounds;
+
+	/**
+	  * Per iteration input of the bounded assignment and the canopy sums: how far each centroid moved, the largest
+	  * move among the candidates of each canopy, whether a canopy's candidates changed, and whether the bounds are
+	  * initialised.
+	  */
+	private double[] centroidMovements, canopyMovements;
+	private boolean[] canopyChanged;
+	private boolean boundsValid;
+
+	/**
+	  * Per canopy sums kept across iterations when ccimr.mapper.canopysums is set: for the i-th candidate centroid of
+	  * canopy c, the sum of the years, the sum of the temperatures and the number of the canopy's points assigned to
+	  * it in the last iteration the canopy was assigned, at canopySums[c][3 * i], [3 * i + 1] and [3 * i + 2].
+	  * canopyReused marks the canopies of this iteration that contribute those sums instead of being assigned again.
+	  */
+	private int[][] canopySums;
+	private boolean[] canopyReused;
+	private boolean canopySumsValid;
+
+	/**
+	  * Fraction of the points assigned in a mini-batch iteration (0 if mini-batch is off), and the generator
+	  * drawing the samples.
+	  */
+	private double sampleFraction;
+	private Random sampleRandom;
+
+	/**
+	  * Whether map() emits a MapTaskMetrics record, the number of this map task, and the distance evaluations of
+	  * the current iteration, added up by the assigning threads block by block.
+	  */
+	private boolean reportMetrics;
+	private int mapTaskNo;
+
+	/**
+	  * Number of shards the sums are split into, one per reduce task.
+	  */
+	private int numShards;
+	private final AtomicLong distanceCount = new AtomicLong();
+
+	/**
+	  * State of the k-means|| seeding, from its PICK step to its WEIGHT step: for each data point the distance to
+	  * its nearest seed candidate and the index of that candidate, and the number of candidates so far.
+	  * With ccimr.seeding.canopy set, seedCovered marks the canopies with a candidate within T1 of their center,
+	  * whose points only count those candidates.
+	  */
+	private double[] seedDistances;
+	private int[] seedNearest;
+	private int numSeedCandidates;
+	private boolean seedWithinCanopies;
+	private boolean[] seedCovered;
+
+	/**
+	  * Directory of the label files (null if there is no labelling pass), and their format.
+	  */
+	private String labelsDir;
+	private boolean labelsBinary, labelDistances;
+
+	/**
+	  * With a labelling pass, the index of every data point among the records of the partition, in the order of
+	  * dataPoints, so the labels are written in the order of the partition; and the number of records read,
+	  * including those dropped while loading.
+	  */
+	private int[] recordIndices;
+	private int recordsRead;
+
 	public void close() throws TwisterException {
+		if(pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
 	}
 
 	public void configure(JobConf jobConf, MapperConf mapConf)	throws TwisterException {
-		// Allocate memory for Data Set and Canopy Centers
-		data = new DataPointVector[2];
-		data[CANOPY_CENTER] = new DataPointVector();
-		data[DATA_POINT] = new DataPointVector();
+		numThreads = ClusteringConf.getInt(jobConf, ClusteringConf.MAPPER_THREADS, ClusteringConf.DEFAULT_MAPPER_THREADS);
+		if(numThreads > 1) {
+			pool = new ForkJoinPool(numThreads);
+		}
+
+		deltaBroadcast = ClusteringConf.getBoolean(jobConf, ClusteringConf.DELTA_BROADCAST,
+				ClusteringConf.DEFAULT_DELTA_BROADCAST);
 
+		sampleFraction = ClusteringConf.getDouble(jobConf, ClusteringConf.MINIBATCH_FRACTION,
+				ClusteringConf.DEFAULT_MINIBATCH_FRACTION);
+		if(sampleFraction > 0) {
+			long seed = ClusteringConf.getInt(jobConf, ClusteringConf.MINIBATCH_SEED, ClusteringConf.DEFAULT_MINIBATCH_SEED);
+			sampleRandom = new Random(seed * 31 + mapConf.getMapTaskNo());
+		}
+
+		DataPointVector.setDeflate(ClusteringConf.getBoolean(jobConf, ClusteringConf.WIRE_DEFLATE,
+				ClusteringConf.DEFAULT_WIRE_DEFLATE));
+		reportMetrics = (jobConf.getProperty(ClusteringConf.METRICS_FILE) != null);
+		numShards = Math.max(1, ClusteringConf.getInt(jobConf, ClusteringConf.REDUCERS, ClusteringConf.DEFAULT_REDUCERS));
+		mapTaskNo = mapConf.getMapTaskNo();
+		seedWithinCanopies = ClusteringConf.getBoolean(jobConf, ClusteringConf.SEEDING_CANOPY,
+				ClusteringConf.DEFAULT_SEEDING_CANOPY);
+		labelsDir = jobConf.getProperty(ClusteringConf.LABELS_DIR);
+		String labelsFormat = jobConf.getProperty(ClusteringConf.LABELS_FORMAT);
+		labelsBinary = "binary".equalsIgnoreCase(labelsFormat == null ? ClusteringConf.DEFAULT_LABELS_FORMAT
+				: labelsFormat.trim());
+		labelDistances = ClusteringConf.getBoolean(jobConf, ClusteringConf.LABELS_DISTANCES,
+				ClusteringConf.DEFAULT_LABELS_DISTANCES);
+
+		// Allocate memory for Data Set and Canopy Centers
+		dataPoints = new DataPointVector();
+		pointCanopyIds = new int[16];
+		recordIndices = (labelsDir == null ? null : new int[16]);
+		recordsRead = 0;
 		canopyCenters = new DataPointVector();
 		fileData = (FileData) mapConf.getDataPartition();
 
+		boolean cachePartition = ClusteringConf.getBoolean(jobConf, ClusteringConf.PARTITION_CACHE,
+				ClusteringConf.DEFAULT_PARTITION_CACHE);
+
 		String line;
 		BufferedReader reader;
 
 		try {
-			// Load Data Set
-			String filename = fileData.getFileName();
-			reader = new BufferedReader(new FileReader(filename));
-			line = null;
-			while((line = reader.readLine()) != null) {
-				int tabPosition = line.indexOf("\t");
-				// Canopy Center
-				data[CANOPY_CENTER].add(new DataPoint(line.substring(0, tabPosition)));
-				// Data Point
-				data[DATA_POINT].add(new DataPoint(line.substring(tabPosition + 1)));
-			}
-
 			// Load Canopy Centers
+			String filename = fileData.getFileName();
 			int dataPosition = filename.indexOf("data");
 			String canopyCentersFile = filename.substring(0, dataPosition) + "data/" + ClusteringDriver.canopyCentersFileLocation;
 			reader = new BufferedReader(new FileReader(canopyCentersFile));
@@ -69,82 +245,1126 @@ public class ClusteringMapper implements MapTask {
 			while((line = reader.readLine()) != null) {
 				canopyCenters.add(new DataPoint(line));
 			}
+			reader.close();
+
+			// Give every canopy center an integer id, its index in canopyCenters
+			canopyCenterIds = new HashMap<DataPoint, Integer>();
+			for(int i = 0; i < canopyCenters.size(); i++) {
+				canopyCenterIds.put(canopyCenters.get(i), i);
+			}
+			canopyCenterProbe = new DataPoint();
+
+			// Load Data Set
+			File sidecar = new File(filename + PartitionFile.SIDECAR_SUFFIX);
+			if(PartitionFile.isBinary(filename)) {
+				loadBinaryPartition(filename);
+			} else if(cachePartition && sidecar.lastModified() >= new File(filename).lastModified()
+					&& PartitionFile.isBinary(sidecar.getPath())) {
+				loadBinaryPartition(sidecar.getPath());
+			} else {
+				loadTextPartition(filename, (cachePartition ? sidecar : null));
+			}
 		} catch (Exception e) {
 			e.printStackTrace();
 			throw new TwisterException(e);
 		}
+
+		groupByCanopy();
+
+		if(ClusteringConf.getBoolean(jobConf, ClusteringConf.MAPPER_BOUNDS, ClusteringConf.DEFAULT_MAPPER_BOUNDS)) {
+			assignments = new int[dataPoints.size()];
+			upperBounds = new double[dataPoints.size()];
+			lowerBounds = new double[dataPoints.size()];
+			boundsValid = false;
+		}
+		if(ClusteringConf.getBoolean(jobConf, ClusteringConf.MAPPER_CANOPY_SUMS, ClusteringConf.DEFAULT_MAPPER_CANOPY_SUMS)) {
+			canopySums = new int[canopyCenters.size()][];
+			canopyReused = new boolean[canopyCenters.size()];
+			canopySumsValid = false;
+		}
+		if(upperBounds != null || canopySums != null) {
+			canopyMovements = new double[canopyCenters.size()];
+			canopyChanged = new boolean[canopyCenters.size()];
+		}
+	}
+
+	/**
+	  * Adds a record of the partition, replacing its canopy center by the canopy id.
+	  */
+	private void addRecord(int canopyYear, int canopyTemperature, int year, int temperature) {
+		canopyCenterProbe.year = canopyYear;
+		canopyCenterProbe.temperature = canopyTemperature;
+		Integer canopyId = canopyCenterIds.get(canopyCenterProbe);
+		int record = recordsRead++;
+		if(canopyId == null) {
+			return;
+		}
+
+		int index = dataPoints.size();
+		if(index == pointCanopyIds.length) {
+			pointCanopyIds = Arrays.copyOf(pointCanopyIds, index + (index >> 1));
+		}
+		pointCanopyIds[index] = canopyId;
+		if(recordIndices != null) {
+			if(index == recordIndices.length) {
+				recordIndices = Arrays.copyOf(recordIndices, index + (index >> 1));
+			}
+			recordIndices[index] = record;
+		}
+		dataPoints.add(year, temperature, 0);
+	}
+
+	/**
+	  * Loads a text partition of "canopyCenter\tdataPoint" lines.
+	  * If a sidecar is given, every record is also written to it in the binary format, so later runs can skip
+	  * parsing the text. The sidecar is written to a temporary file and renamed into place, so a partial file
+	  * is never picked up.
+	  *
+	  * @param filename Path to the text partition.
+	  * @param sidecar Path of the binary sidecar to write, or null.
+	  */
+	private void loadTextPartition(String filename, File sidecar)
+	throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(filename));
+		File temporary = (sidecar == null ? null : new File(sidecar.getPath() + ".tmp"));
+		PartitionFile.Writer writer = (sidecar == null ? null : new PartitionFile.Writer(temporary.getPath()));
+		int[] fields = new int[4];
+		String line = null;
+		try {
+			while((line = reader.readLine()) != null) {
+				PartitionFile.parseRecord(line, fields);
+				addRecord(fields[0], fields[1], fields[2], fields[3]);
+				if(writer != null) {
+					writer.write(fields[0], fields[1], fields[2], fields[3]);
+				}
+			}
+		} finally {
+			reader.close();
+			if(writer != null) {
+				writer.close();
+			}
+		}
+		if(sidecar != null && !temporary.renameTo(sidecar)) {
+			throw new IOException("Cannot rename " + temporary + " to " + sidecar);
+		}
+	}
+
+	/**
+	  * Loads a binary partition through a memory-mapped FileChannel.
+	  *
+	  * @param filename Path to the binary partition.
+	  */
+	private void loadBinaryPartition(String filename)
+	throws IOException {
+		long recordCount = PartitionFile.recordCount(filename);
+		if(recordCount > Integer.MAX_VALUE) {
+			throw new IOException("Partition " + filename + " has too many records: " + recordCount);
+		}
+		dataPoints.ensureCapacity((int) recordCount);
+		pointCanopyIds = new int[Math.max((int) recordCount, 16)];
+		if(recordIndices != null) {
+			recordIndices = new int[Math.max((int) recordCount, 16)];
+		}
+
+		PartitionFile.read(filename, new PartitionFile.RecordVisitor() {
+			public void visit(int canopyYear, int canopyTemperature, int year, int temperature) {
+				addRecord(canopyYear, canopyTemperature, year, temperature);
+			}
+		});
+	}
+
+	/**
+	  * Sorts the loaded data points by canopy id (a counting sort) and fills canopyOffsets,
+	  * so that map() can walk each canopy as one contiguous block. The record indices are moved along.
+	  */
+	private void groupByCanopy() {
+		int numCanopies = canopyCenters.size();
+		int numPoints = dataPoints.size();
+
+		canopyOffsets = new int[numCanopies + 1];
+		for(int k = 0; k < numPoints; k++) {
+			canopyOffsets[pointCanopyIds[k] + 1]++;
+		}
+		for(int c = 0; c < numCanopies; c++) {
+			canopyOffsets[c + 1] += canopyOffsets[c];
+		}
+
+		int[] next = Arrays.copyOf(canopyOffsets, numCanopies);
+		DataPointVector grouped = new DataPointVector(numPoints);
+		int[] groupedRecords = (recordIndices == null ? null : new int[numPoints]);
+		for(int k = 0; k < numPoints; k++) {
+			int position = next[pointCanopyIds[k]]++;
+			grouped.set(position, dataPoints.getYear(k), dataPoints.getTemperature(k), 0);
+			if(groupedRecords != null) {
+				groupedRecords[position] = recordIndices[k];
+			}
+		}
+
+		dataPoints = grouped;
+		recordIndices = groupedRecords;
+		pointCanopyIds = null;
+		canopyCenterIds = null;
+		canopyCenterProbe = null;
+
+		canopiesByTemperature = sortByTemperature(canopyCenters);
+		sortedCanopyTemperatures = new int[numCanopies];
+		for(int i = 0; i < numCanopies; i++) {
+			sortedCanopyTemperatures[i] = canopyCenters.getTemperature(canopiesByTemperature[i]);
+		}
+	}
+
+	/**
+	  * Sorts the indices of a vector by the temperature of their point, ties by index.
+	  *
+	  * @param points Points to sort.
+	  * @return int[] Indices into points in increasing order of temperature.
+	  */
+	private static int[] sortByTemperature(DataPointVector points) {
+		long[] keys = new long[points.size()];
+		for(int i = 0; i < keys.length; i++) {
+			keys[i] = ((long) points.getTemperature(i) << 32) | i;
+		}
+		Arrays.sort(keys);
+		int[] order = new int[keys.length];
+		for(int i = 0; i < keys.length; i++) {
+			order[i] = (int) keys[i];
+		}
+		return order;
+	}
+
+	/**
+	  * Finds the first element of a sorted array within T1 of a temperature. The elements within T1 are the
+	  * run starting there for which withinT1() holds.
+	  *
+	  * @param sortedTemperatures Temperatures in increasing order.
+	  * @param temperature Temperature to search around.
+	  * @return int Index of the first element greater than temperature - T1, or the array length.
+	  */
+	private static int firstWithinT1(int[] sortedTemperatures, int temperature) {
+		double lowest = temperature - DataPoint.T1;
+		int low = 0, high = sortedTemperatures.length;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(sortedTemperatures[middle] > lowest) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return low;
 	}
 
 	public void map(MapOutputCollector collector, Key key, Value val)
 	throws TwisterException {
-		// Allocate memory for k-Means Centroids and HashMap
-		DataPointVector kCentroids = new DataPointVector();
-		HashMap<DataPoint, ArrayList<DataPoint>> canopyCenterKCentroidsMap = new HashMap<DataPoint, ArrayList<DataPoint>>();
-
+		long beginTime = System.nanoTime();
+		distanceCount.set(0);
 		try {
+			byte[] bytes = val.getBytes();
+			if(SeedingStep.isSeedingStep(bytes)) {
+				SeedingStep step = new SeedingStep();
+				step.fromBytes(bytes);
+				collector.collect(new StringKey(SEEDING_KEY), new BytesValue(seed(step).getBytes()));
+				return;
+			}
+
 			// Read broadcasted k-Centroids
-			kCentroids.fromBytes(val.getBytes());
-			
-			// Set up the HashMap
-			for(int i = 0; i < canopyCenters.size(); i++)
-			{
-				// For each Canopy Center, create an ArrayList of all Data Points within this Canopy
-				ArrayList<DataPoint> centroidList = new ArrayList<DataPoint>();
-	
-				for(int j = 0; j < kCentroids.size(); j++)
-				{
-					// If a k-Means Centroid is within this Canopy, add it to the ArrayList
-					if(canopyCenters.get(i).withinT1(kCentroids.get(j))) {
-						centroidList.add(kCentroids.get(j));
+			DataPointVector previousCentroids = kCentroids;
+			int[][] previousCanopyCentroids = canopyCentroids;
+			boolean sampled = false;
+			if(deltaBroadcast || sampleFraction > 0 || labelsDir != null) {
+				// Mini-batch runs and runs with a labelling pass always broadcast CentroidDelta values, which carry
+				// the sampled and label flags
+				CentroidDelta delta = new CentroidDelta();
+				delta.fromBytes(bytes);
+				if(delta.isLabel()) {
+					applyCentroidDelta(delta);
+					collector.collect(new StringKey(LABELS_KEY), new BytesValue(writeLabels().getBytes()));
+					return;
+				}
+				sampled = delta.isSampled();
+				if(canopyMovements != null && kCentroids != null) {
+					// The delta is applied in place, keep what the bounds and sums were computed against
+					previousCentroids = new DataPointVector(kCentroids);
+					previousCanopyCentroids = canopyCentroids.clone();
+				}
+				applyCentroidDelta(delta);
+			} else {
+				kCentroids = new DataPointVector();
+				kCentroids.fromBytes(bytes);
+				canopyCentroids = buildCanopyCentroidIndex(kCentroids);
+			}
+			if(canopyMovements != null) {
+				updateCentroidMovements(previousCentroids, previousCanopyCentroids);
+			}
+			if(canopySums != null && !sampled) {
+				prepareCanopySums();
+			}
+
+			// A mini-batch iteration assigns a sample, given by sorted indices, instead of the whole range
+			int[] sample = (sampled ? sampleIndices(dataPoints.size(), sampleFraction, sampleRandom) : null);
+			int length = (sampled ? sample.length : dataPoints.size());
+
+			DataPointVector newCentroids;
+			if(pool == null) {
+				newCentroids = new DataPointVector(kCentroids.size());
+				assign(sample, 0, length, kCentroids, canopyCentroids, newCentroids);
+			} else {
+				int chunkSize = Math.max(MIN_CHUNK_SIZE, length / (4 * numThreads));
+				newCentroids = pool.invoke(new AssignmentTask(sample, 0, length, chunkSize, kCentroids, canopyCentroids));
+			}
+			// The bounds and canopy sums of the points left out of a sample were not moved along with the centroids
+			boundsValid = (upperBounds != null && !sampled);
+			canopySumsValid = (canopySums != null && !sampled);
+
+			// System.out.println("NCDOne: " + newCentroids);
+
+			// The sums are split into shards of consecutive centroids, each under a ShardKey routing it to the
+			// reducer of the same number. Every shard is emitted, even if empty, so that each reducer hears from
+			// every map task
+			int shards = Math.max(1, Math.min(numShards, newCentroids.size()));
+			long outputBytes = 0;
+			for(int shard = 0; shard < shards; shard++) {
+				DataPointVector sums = (shards == 1 ? newCentroids
+						: newCentroids.subVector(shardStart(shard, shards, newCentroids.size()),
+								shardStart(shard + 1, shards, newCentroids.size())));
+				byte[] output = sums.getBytes();
+				outputBytes += output.length;
+				collector.collect(new ShardKey(sampled, shard), new BytesValue(output));
+			}
+
+			if(reportMetrics) {
+				long points = 0;
+				for(int j = 0; j < newCentroids.size(); j++) {
+					points += newCentroids.getCount(j);
+				}
+				MapTaskMetrics metrics = new MapTaskMetrics();
+				metrics.add(mapTaskNo, points, distanceCount.get(), outputBytes, System.nanoTime() - beginTime);
+				collector.collect(new StringKey(METRICS_KEY), new BytesValue(metrics.getBytes()));
+			}
+
+		} catch (SerializationException e) {
+			throw new TwisterException(e);
+		}
+	}
+
+	/**
+	  * Answers a step of the k-means|| seeding.
+	  * PICK starts the seeding, UPDATE and WEIGHT add the candidates they carry, which must follow the ones already
+	  * held, SAMPLE draws points and WEIGHT ends the seeding.
+	  *
+	  * @param step Broadcast step.
+	  * @return SeedingStep The answer of this map task.
+	  */
+	private SeedingStep seed(SeedingStep step)
+	throws TwisterException {
+		int numPoints = dataPoints.size();
+		Random random = new Random(step.getSeed() * 31 + mapTaskNo);
+		DataPointVector points = new DataPointVector();
+		double cost = 0;
+
+		if(step.getStep() == SeedingStep.PICK) {
+			seedDistances = new double[numPoints];
+			seedNearest = new int[numPoints];
+			seedCovered = new boolean[canopyCenters.size()];
+			numSeedCandidates = 0;
+			if(numPoints > 0) {
+				int k = random.nextInt(numPoints);
+				points.add(dataPoints.getYear(k), dataPoints.getTemperature(k), numPoints);
+			}
+			return new SeedingStep(SeedingStep.PICK, 0, 0, 0, 0, points);
+		}
+		if(seedDistances == null) {
+			throw new TwisterException("Map task received seeding step " + step.getStep() + " before PICK");
+		}
+
+		if(step.getStep() == SeedingStep.SAMPLE) {
+			double scale = step.getOversampling() / step.getCost();
+			for(int k = 0; k < numPoints && step.getCost() > 0; k++) {
+				if(random.nextDouble() < scale * seedDistances[k]) {
+					points.add(dataPoints.getYear(k), dataPoints.getTemperature(k), 1);
+				}
+			}
+			return new SeedingStep(SeedingStep.SAMPLE, 0, 0, 0, 0, points);
+		}
+
+		if(step.getFirst() != numSeedCandidates) {
+			throw new TwisterException("Map task holds " + numSeedCandidates + " seed candidates, cannot add candidates from "
+					+ step.getFirst());
+		}
+		DataPointVector candidates = step.getPoints();
+		if(candidates.size() > 0) {
+			if(pool == null) {
+				cost = updateSeedDistances(0, canopyCenters.size(), candidates, numSeedCandidates);
+			} else {
+				int chunkSize = Math.max(MIN_CHUNK_SIZE, numPoints / (4 * numThreads));
+				cost = pool.invoke(new SeedingTask(0, canopyCenters.size(), chunkSize, candidates, numSeedCandidates));
+			}
+		} else {
+			for(int k = 0; k < numPoints; k++) {
+				cost += seedDistances[k];
+			}
+		}
+		numSeedCandidates += candidates.size();
+
+		if(step.getStep() == SeedingStep.WEIGHT) {
+			points = new DataPointVector(numSeedCandidates);
+			for(int k = 0; k < numPoints; k++) {
+				points.incrementCounter(seedNearest[k]);
+			}
+			seedDistances = null;
+			seedNearest = null;
+			seedCovered = null;
+		}
+		return new SeedingStep(step.getStep(), 0, 0, cost, 0, points);
+	}
+
+	/**
+	  * Lowers the seed distances of the data points of the canopies in [from, to) with new candidates, candidate
+	  * by candidate over each canopy block. A canopy that gets its first candidate within T1 while ccimr.seeding.canopy
+	  * is set drops the distances to the candidates outside T1 counted so far.
+	  *
+	  * @param from First canopy id.
+	  * @param to Canopy id after the last one.
+	  * @param candidates New candidates.
+	  * @param first Index of the first new candidate among all candidates.
+	  * @return double Sum of the seed distances of the points of the canopies.
+	  */
+	private double updateSeedDistances(int from, int to, DataPointVector candidates, int first) {
+		double cost = 0;
+		long distances = 0;
+		for(int c = from; c < to; c++) {
+			int start = canopyOffsets[c], end = canopyOffsets[c + 1];
+			int canopyTemperature = canopyCenters.getTemperature(c);
+			for(int i = 0; i < candidates.size(); i++) {
+				int year = candidates.getYear(i);
+				int temperature = candidates.getTemperature(i);
+				boolean replace = false;
+				if(seedWithinCanopies) {
+					boolean withinT1 = DataPoint.withinT1(canopyTemperature, temperature);
+					if(seedCovered[c] && !withinT1) {
+						continue;
 					}
-						
-				}
-				// Add all the k-Means Centroids in this Canopy to the HashMap as this Canopy Center's value
-				if(centroidList.size() > 0)
-					canopyCenterKCentroidsMap.put(canopyCenters.get(i), centroidList);
-			}
-
-			DataPointVector newCentroids = new DataPointVector(kCentroids.size());
-
-			for(int k = 0; k < data[CANOPY_CENTER].size(); k++) {
-				ArrayList<DataPoint> centroids = canopyCenterKCentroidsMap.get(data[CANOPY_CENTER].get(k));
-				DataPoint dataPoint = data[DATA_POINT].get(k);
-				if(centroids != null)
-				{
-					// Set the minimum distance to the maximum value a double can hold and create
-					double minDistance = Double.MAX_VALUE;
-					int offset = -1;
-
-					for(int i = 0; i < centroids.size(); i++)
-					{
-						DataPoint centroid = centroids.get(i);
-						double distance = dataPoint.complexDistance(centroid);
-
-						// Check if the distance is less than the minimum distance found so far
-						if(distance < minDistance)
-						{
-							minDistance = distance;
-							offset = i;
-						}
+					replace = (withinT1 && !seedCovered[c]);
+					seedCovered[c] |= withinT1;
+				}
+				if(replace || first + i == 0) {
+					for(int k = start; k < end; k++) {
+						seedDistances[k] = DataPoint.complexDistance(dataPoints.getYear(k), dataPoints.getTemperature(k),
+								year, temperature);
+						seedNearest[k] = first + i;
 					}
-
-					for(int j = 0; j < newCentroids.size(); j++) {
-						if(centroids.get(offset).equals(kCentroids.get(j))) {
-							// System.out.println(centroids.get(j));
-							newCentroids.sumDataPointToElement(j, dataPoint);
-							newCentroids.get(j).incrementCounter();
+				} else {
+					for(int k = start; k < end; k++) {
+						double distance = DataPoint.complexDistance(dataPoints.getYear(k), dataPoints.getTemperature(k),
+								year, temperature);
+						if(distance < seedDistances[k]) {
+							seedDistances[k] = distance;
+							seedNearest[k] = first + i;
 						}
 					}
 				}
+				distances += end - start;
+			}
+			for(int k = start; k < end; k++) {
+				cost += seedDistances[k];
 			}
+		}
+		distanceCount.addAndGet(distances);
+		return cost;
+	}
 
-			// System.out.println("NCDOne: " + newCentroids);
+	/**
+	  * Writes the label of every data point, its nearest centroid within its canopy as in the iterations, to the
+	  * label file of this map task, in the order of the records of the partition. The labels are computed by the
+	  * fork-join pool when there is one, and the distances only if the label file holds them.
+	  *
+	  * @return LabelReport The report of the label file.
+	  */
+	private LabelReport writeLabels()
+	throws TwisterException {
+		int numPoints = dataPoints.size();
+		int[] labels = new int[numPoints];
+		int[] distances = (labelDistances ? new int[numPoints] : null);
+		if(pool == null) {
+			labelRange(0, numPoints, labels, distances);
+		} else {
+			int chunkSize = Math.max(MIN_CHUNK_SIZE, numPoints / (4 * numThreads));
+			pool.invoke(new LabelTask(0, numPoints, chunkSize, labels, distances));
+		}
 
-			collector.collect(new StringKey("kmeans-map-to-reduce-key"),
-					new BytesValue(newCentroids.getBytes()));
+		// Position of every record of the partition among the grouped data points, -1 for a dropped record
+		int[] positions = new int[recordsRead];
+		Arrays.fill(positions, -1);
+		for(int k = 0; k < numPoints; k++) {
+			positions[recordIndices[k]] = k;
+		}
 
-		} catch (SerializationException e) {
+		File file = new File(labelsDir, "labels-" + mapTaskNo + (labelsBinary ? ".bin" : ".txt"));
+		long unlabelled = 0;
+		try {
+			file.getParentFile().mkdirs();
+			LabelFile.Writer writer = new LabelFile.Writer(file.getPath(), labelsBinary, labelDistances);
+			for(int record = 0; record < recordsRead; record++) {
+				int k = positions[record];
+				if(k < 0) {
+					continue;
+				}
+				if(labels[k] < 0) {
+					unlabelled++;
+				}
+				writer.write(record, dataPoints.getYear(k), dataPoints.getTemperature(k), labels[k],
+						(distances == null ? -1 : distances[k]));
+			}
+			writer.close();
+		} catch (IOException e) {
 			throw new TwisterException(e);
 		}
+		return new LabelReport(numPoints, unlabelled, recordsRead - numPoints, file.length());
+	}
+
+	/**
+	  * Finds the label of the data points in [from, to): the index of their nearest candidate centroid and the
+	  * distance to it, or -1 for both if their canopy has no candidate.
+	  *
+	  * @param from Index of the first data point.
+	  * @param to Index after the last data point.
+	  * @param labels Labels of all data points, filled in [from, to).
+	  * @param distances Distances of all data points, filled in [from, to), or null.
+	  */
+	private void labelRange(int from, int to, int[] labels, int[] distances) {
+		int[] centroidYears = new int[kCentroids.size()];
+		int[] centroidTemperatures = new int[kCentroids.size()];
+		long count = 0;
+
+		for(int c = canopyOf(from); c < canopyCenters.size() && canopyOffsets[c] < to; c++) {
+			int[] centroids = canopyCentroids[c];
+			int start = Math.max(from, canopyOffsets[c]);
+			int end = Math.min(to, canopyOffsets[c + 1]);
+			if(centroids.length == 0) {
+				Arrays.fill(labels, start, end, -1);
+				if(distances != null) {
+					Arrays.fill(distances, start, end, -1);
+				}
+				continue;
+			}
+			for(int i = 0; i < centroids.length; i++) {
+				centroidYears[i] = kCentroids.getYear(centroids[i]);
+				centroidTemperatures[i] = kCentroids.getTemperature(centroids[i]);
+			}
+			for(int k = start; k < end; k++) {
+				int year = dataPoints.getYear(k);
+				int temperature = dataPoints.getTemperature(k);
+				int offset = nearest(year, temperature, centroids.length, centroidYears, centroidTemperatures);
+				labels[k] = centroids[offset];
+				if(distances != null) {
+					distances[k] = (int) DataPoint.complexDistance(year, temperature, centroidYears[offset],
+							centroidTemperatures[offset]);
+				}
+			}
+			count += (long) (end - start) * centroids.length;
+		}
+		distanceCount.addAndGet(count);
+	}
+
+	/**
+	  * Returns the index of the first centroid of a shard; shards differ in size by at most one centroid.
+	  *
+	  * @param shard Shard number, or the number of shards for the end of the last one.
+	  * @param shards Number of shards.
+	  * @param numCentroids Number of centroids (k).
+	  * @return int Index of the first centroid of the shard.
+	  */
+	static int shardStart(int shard, int shards, int numCentroids) {
+		return (int) ((long) shard * numCentroids / shards);
+	}
+
+	/**
+	  * Assigns either the data points in [from, to), or those at sample[from], ..., sample[to - 1].
+	  */
+	private void assign(int[] sample, int from, int to, DataPointVector kCentroids, int[][] canopyCentroids,
+			DataPointVector sums) {
+		if(sample == null) {
+			assignRange(from, to, kCentroids, canopyCentroids, sums);
+		} else {
+			assignSample(sample, from, to, kCentroids, canopyCentroids, sums);
+		}
+	}
+
+	/**
+	  * Assigns the data points in [from, to) to their nearest k-Means Centroid within their canopy,
+	  * adding each point to the running sum and count of that centroid.
+	  * The range is walked canopy block by canopy block, so the candidate centroids are fetched once per block.
+	  * With bounds enabled the blocks are handed to assignBlockWithBounds(). With canopy sums enabled, a reused canopy
+	  * adds its cached sums once, from the range holding its first point, and the block of any other canopy is added
+	  * to its cache.
+	  *
+	  * @param from Index of the first data point to assign.
+	  * @param to Index after the last data point to assign.
+	  * @param kCentroids Broadcasted k-Means Centroids.
+	  * @param canopyCentroids Centroid indices per canopy id, from buildCanopyCentroidIndex().
+	  * @param sums Per-centroid sums and counts to add the assigned points to.
+	  */
+	private void assignRange(int from, int to, DataPointVector kCentroids, int[][] canopyCentroids,
+			DataPointVector sums) {
+		int[] centroidYears = new int[kCentroids.size()];
+		int[] centroidTemperatures = new int[kCentroids.size()];
+		int[] before = (canopySums == null ? null : new int[3 * kCentroids.size()]);
+		long distances = 0;
+
+		for(int c = canopyOf(from); c < canopyCenters.size() && canopyOffsets[c] < to; c++) {
+			int[] centroids = canopyCentroids[c];
+			if(centroids.length == 0) {
+				continue;
+			}
+			int start = Math.max(from, canopyOffsets[c]);
+			int end = Math.min(to, canopyOffsets[c + 1]);
+			if(canopySums != null && canopyReused[c]) {
+				if(start == canopyOffsets[c]) {
+					addCanopySums(canopySums[c], centroids, sums);
+				}
+				continue;
+			}
+
+			for(int i = 0; i < centroids.length; i++) {
+				centroidYears[i] = kCentroids.getYear(centroids[i]);
+				centroidTemperatures[i] = kCentroids.getTemperature(centroids[i]);
+			}
+			if(before != null) {
+				// The block's contribution is what it adds to the sums of the candidates
+				for(int i = 0; i < centroids.length; i++) {
+					before[3 * i] = sums.getYear(centroids[i]);
+					before[3 * i + 1] = sums.getTemperature(centroids[i]);
+					before[3 * i + 2] = sums.getCount(centroids[i]);
+				}
+			}
+
+			if(upperBounds != null) {
+				distances += assignBlockWithBounds(c, start, end, kCentroids, centroids, centroidYears,
+						centroidTemperatures, sums);
+			} else {
+				distances += (long) (end - start) * centroids.length;
+				for(int k = start; k < end; k++) {
+					int year = dataPoints.getYear(k);
+					int temperature = dataPoints.getTemperature(k);
+					int offset = nearest(year, temperature, centroids.length, centroidYears, centroidTemperatures);
+					sums.sumToElement(centroids[offset], year, temperature);
+					sums.incrementCounter(centroids[offset]);
+				}
+			}
+
+			if(before != null) {
+				int[] cached = canopySums[c];
+				// A canopy split between fork-join tasks is cached by each of them in turn
+				synchronized(cached) {
+					for(int i = 0; i < centroids.length; i++) {
+						cached[3 * i] += sums.getYear(centroids[i]) - before[3 * i];
+						cached[3 * i + 1] += sums.getTemperature(centroids[i]) - before[3 * i + 1];
+						cached[3 * i + 2] += sums.getCount(centroids[i]) - before[3 * i + 2];
+					}
+				}
+			}
+		}
+		distanceCount.addAndGet(distances);
+	}
+
+	/**
+	  * Decides, before a full iteration, which canopies reuse their cached sums: those whose candidate centroids
+	  * are the same as in the previous iteration and did not move. The caches of all other canopies are cleared
+	  * for assignRange() to fill again.
+	  */
+	private void prepareCanopySums() {
+		for(int c = 0; c < canopyCenters.size(); c++) {
+			int length = 3 * canopyCentroids[c].length;
+			canopyReused[c] = canopySumsValid && !canopyChanged[c] && canopyMovements[c] == 0;
+			if(canopyReused[c]) {
+				continue;
+			}
+			if(canopySums[c] == null || canopySums[c].length != length) {
+				canopySums[c] = new int[length];
+			} else {
+				Arrays.fill(canopySums[c], 0);
+			}
+		}
+	}
+
+	/**
+	  * Adds the cached sums of a canopy to the sums of its candidate centroids.
+	  *
+	  * @param cached Cached sums of the canopy, laid out as in canopySums.
+	  * @param centroids Indices of the candidate centroids of the canopy.
+	  * @param sums Per-centroid sums and counts to add to.
+	  */
+	private static void addCanopySums(int[] cached, int[] centroids, DataPointVector sums) {
+		for(int i = 0; i < centroids.length; i++) {
+			int j = centroids[i];
+			sums.set(j, sums.getYear(j) + cached[3 * i], sums.getTemperature(j) + cached[3 * i + 1],
+					sums.getCount(j) + cached[3 * i + 2]);
+		}
+	}
+
+	/**
+	  * Assigns the data points at sample[from], ..., sample[to - 1] like assignRange(). The indices are sorted,
+	  * so the sample also walks the canopy blocks in order and fetches the candidates once per block.
+	  *
+	  * @param sample Sorted indices into dataPoints, from sampleIndices().
+	  * @param from Position in sample of the first data point to assign.
+	  * @param to Position in sample after the last data point to assign.
+	  * @param kCentroids Broadcasted k-Means Centroids.
+	  * @param canopyCentroids Centroid indices per canopy id, from buildCanopyCentroidIndex().
+	  * @param sums Per-centroid sums and counts to add the assigned points to.
+	  */
+	private void assignSample(int[] sample, int from, int to, DataPointVector kCentroids, int[][] canopyCentroids,
+			DataPointVector sums) {
+		if(from >= to) {
+			return;
+		}
+		int[] centroidYears = new int[kCentroids.size()];
+		int[] centroidTemperatures = new int[kCentroids.size()];
+
+		int c = canopyOf(sample[from]);
+		int[] centroids = null;
+		long distances = 0;
+		for(int s = from; s < to; s++) {
+			int k = sample[s];
+			while(canopyOffsets[c + 1] <= k) {
+				c++;
+				centroids = null;
+			}
+			if(centroids == null) {
+				centroids = canopyCentroids[c];
+				for(int i = 0; i < centroids.length; i++) {
+					centroidYears[i] = kCentroids.getYear(centroids[i]);
+					centroidTemperatures[i] = kCentroids.getTemperature(centroids[i]);
+				}
+			}
+			if(centroids.length == 0) {
+				continue;
+			}
+
+			int year = dataPoints.getYear(k);
+			int temperature = dataPoints.getTemperature(k);
+			int offset = nearest(year, temperature, centroids.length, centroidYears, centroidTemperatures);
+			sums.sumToElement(centroids[offset], year, temperature);
+			sums.incrementCounter(centroids[offset]);
+			distances += centroids.length;
+		}
+		distanceCount.addAndGet(distances);
+	}
+
+	/**
+	  * Finds the candidate centroid nearest to a point.
+	  *
+	  * @param year Year of the point.
+	  * @param temperature Temperature of the point.
+	  * @param numCandidates Number of candidate centroids, at least 1.
+	  * @param centroidYears Years of the candidate centroids.
+	  * @param centroidTemperatures Temperatures of the candidate centroids.
+	  * @return int Position of the nearest candidate, the first one on ties.
+	  */
+	private static int nearest(int year, int temperature, int numCandidates, int[] centroidYears,
+			int[] centroidTemperatures) {
+		// Set the minimum distance to the maximum value a double can hold
+		double minDistance = Double.MAX_VALUE;
+		int offset = -1;
+
+		for(int i = 0; i < numCandidates; i++)
+		{
+			double distance = DataPoint.complexDistance(year, temperature,
+					centroidYears[i], centroidTemperatures[i]);
+
+			// Check if the distance is less than the minimum distance found so far
+			if(distance < minDistance)
+			{
+				minDistance = distance;
+				offset = i;
+			}
+		}
+		return offset;
+	}
+
+	/**
+	  * Draws a random sample of indices, each index being kept with probability fraction independently.
+	  * The gaps between kept indices are drawn from the geometric distribution, so the cost is proportional to the
+	  * size of the sample rather than to numPoints, and the indices come out sorted.
+	  *
+	  * @param numPoints Number of indices to sample from, [0, numPoints).
+	  * @param fraction Probability of keeping an index; 1 or more keeps all of them.
+	  * @param random Generator of the sample.
+	  * @return int[] The kept indices in increasing order.
+	  */
+	private static int[] sampleIndices(int numPoints, double fraction, Random random) {
+		int[] sample = new int[(int) Math.min(numPoints, (long) (numPoints * Math.min(fraction, 1) * 1.1) + 16)];
+		int length = 0;
+		if(fraction >= 1) {
+			for(int k = 0; k < numPoints; k++) {
+				sample[length++] = k;
+			}
+			return sample;
+		}
+
+		double logSkip = Math.log(1 - fraction);
+		long k = -1;
+		while(true) {
+			// Number of indices skipped before the next kept one; 1 - nextDouble() lies in (0, 1]
+			double skip = Math.log(1 - random.nextDouble()) / logSkip;
+			if(k + 1 + skip >= numPoints) {
+				break;
+			}
+			k += 1 + (long) skip;
+			if(length == sample.length) {
+				sample = Arrays.copyOf(sample, length + (length >> 1) + 1);
+			}
+			sample[length++] = (int) k;
+		}
+		return Arrays.copyOf(sample, length);
+	}
+
+	/**
+	  * Assigns the data points in [from, to) of one canopy block like assignRange(), but skips the distance
+	  * computations for points whose bounds prove that their assigned centroid is still strictly the nearest.
+	  * A skipped point is only tightened to the exact distance to its assigned centroid; all others are
+	  * compared against every candidate and get fresh bounds.
+	  *
+	  * @param c Canopy id of the block.
+	  * @param from Index of the first data point to assign.
+	  * @param to Index after the last data point to assign.
+	  * @param kCentroids Broadcasted k-Means Centroids.
+	  * @param centroids Indices of the candidate centroids of the canopy.
+	  * @param centroidYears Years of the candidate centroids, in the order of centroids.
+	  * @param centroidTemperatures Temperatures of the candidate centroids, in the order of centroids.
+	  * @param sums Per-centroid sums and counts to add the assigned points to.
+	  * @return long Number of distances computed.
+	  */
+	private long assignBlockWithBounds(int c, int from, int to, DataPointVector kCentroids, int[] centroids,
+			int[] centroidYears, int[] centroidTemperatures, DataPointVector sums) {
+		boolean reuseBounds = boundsValid && !canopyChanged[c];
+		double canopyMovement = (reuseBounds ? canopyMovements[c] : 0);
+		long distances = 0;
+
+		for(int k = from; k < to; k++) {
+			int year = dataPoints.getYear(k);
+			int temperature = dataPoints.getTemperature(k);
+
+			if(reuseBounds) {
+				int assigned = assignments[k];
+				double upper = upperBounds[k] + centroidMovements[assigned] + BOUND_EPSILON;
+				double lower = lowerBounds[k] - canopyMovement - BOUND_EPSILON;
+				if(upper >= lower) {
+					distances++;
+					upper = Math.sqrt(DataPoint.complexDistance(year, temperature,
+							kCentroids.getYear(assigned), kCentroids.getTemperature(assigned)));
+				}
+				if(upper < lower) {
+					upperBounds[k] = upper;
+					lowerBounds[k] = lower;
+					sums.sumToElement(assigned, year, temperature);
+					sums.incrementCounter(assigned);
+					continue;
+				}
+			}
+
+			double minDistance = Double.MAX_VALUE, secondDistance = Double.MAX_VALUE;
+			int offset = -1;
+			for(int i = 0; i < centroids.length; i++) {
+				double distance = DataPoint.complexDistance(year, temperature,
+						centroidYears[i], centroidTemperatures[i]);
+				if(distance < minDistance) {
+					secondDistance = minDistance;
+					minDistance = distance;
+					offset = i;
+				} else if(distance < secondDistance) {
+					secondDistance = distance;
+				}
+			}
+
+			assignments[k] = centroids[offset];
+			upperBounds[k] = Math.sqrt(minDistance);
+			lowerBounds[k] = (centroids.length > 1 ? Math.sqrt(secondDistance) : Double.POSITIVE_INFINITY);
+			sums.sumToElement(centroids[offset], year, temperature);
+			sums.incrementCounter(centroids[offset]);
+			distances += centroids.length;
+		}
+		return distances;
+	}
+
+	/**
+	  * Prepares the bounded assignment and the canopy sums of this iteration: computes how far every centroid moved
+	  * since the previous iteration, the largest move among the candidates of each canopy, and which canopies gained
+	  * or lost candidates (their bounds and sums no longer cover the right centroids and are recomputed).
+	  *
+	  * @param previousCentroids Centroids of the previous iteration, or null.
+	  * @param previousCanopyCentroids Centroid indices per canopy id of the previous iteration, or null.
+	  */
+	private void updateCentroidMovements(DataPointVector previousCentroids, int[][] previousCanopyCentroids) {
+		if(previousCentroids == null || previousCentroids.size() != kCentroids.size()) {
+			boundsValid = false;
+			canopySumsValid = false;
+			return;
+		}
+
+		if(centroidMovements == null || centroidMovements.length != kCentroids.size()) {
+			centroidMovements = new double[kCentroids.size()];
+		}
+		for(int j = 0; j < kCentroids.size(); j++) {
+			centroidMovements[j] = Math.sqrt(DataPoint.complexDistance(previousCentroids.getYear(j),
+					previousCentroids.getTemperature(j), kCentroids.getYear(j), kCentroids.getTemperature(j)));
+		}
+
+		for(int c = 0; c < canopyCenters.size(); c++) {
+			int[] centroids = canopyCentroids[c];
+			canopyChanged[c] = !Arrays.equals(previousCanopyCentroids[c], centroids);
+			double movement = 0;
+			for(int i = 0; i < centroids.length; i++) {
+				movement = Math.max(movement, centroidMovements[centroids[i]]);
+			}
+			canopyMovements[c] = movement;
+		}
+	}
+
+	/**
+	  * Finds the canopy whose block contains a data point index.
+	  *
+	  * @param index Index into dataPoints.
+	  * @return int Largest canopy id c with canopyOffsets[c] <= index.
+	  */
+	private int canopyOf(int index) {
+		int low = 0, high = canopyCenters.size() - 1;
+		while(low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if(canopyOffsets[middle] <= index) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	  * Fork-join task assigning a range of data points, or of a sample of them. Each leaf accumulates into its own
+	  * partial sums, which are merged on the way back up so no state is shared between workers.
+	  */
+	private class AssignmentTask extends RecursiveTask<DataPointVector> {
+		private static final long serialVersionUID = 1L;
+
+		private final int[] sample;
+		private final int from, to, chunkSize;
+		private final DataPointVector kCentroids;
+		private final int[][] canopyCentroids;
+
+		AssignmentTask(int[] sample, int from, int to, int chunkSize, DataPointVector kCentroids,
+				int[][] canopyCentroids) {
+			this.sample = sample;
+			this.from = from;
+			this.to = to;
+			this.chunkSize = chunkSize;
+			this.kCentroids = kCentroids;
+			this.canopyCentroids = canopyCentroids;
+		}
+
+		@Override
+		protected DataPointVector compute() {
+			if(to - from <= chunkSize) {
+				DataPointVector sums = new DataPointVector(kCentroids.size());
+				assign(sample, from, to, kCentroids, canopyCentroids, sums);
+				return sums;
+			}
+			int middle = (from + to) >>> 1;
+			AssignmentTask left = new AssignmentTask(sample, from, middle, chunkSize, kCentroids, canopyCentroids);
+			left.fork();
+			DataPointVector sums = new AssignmentTask(sample, middle, to, chunkSize, kCentroids, canopyCentroids).compute();
+			sums.sumVector(left.join());
+			return sums;
+		}
+	}
+
+	/**
+	  * Fork-join task labelling a range of data points. Each leaf fills its own part of the label arrays.
+	  */
+	private class LabelTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int from, to, chunkSize;
+		private final int[] labels, distances;
+
+		LabelTask(int from, int to, int chunkSize, int[] labels, int[] distances) {
+			this.from = from;
+			this.to = to;
+			this.chunkSize = chunkSize;
+			this.labels = labels;
+			this.distances = distances;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from <= chunkSize) {
+				labelRange(from, to, labels, distances);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new LabelTask(from, middle, chunkSize, labels, distances),
+					new LabelTask(middle, to, chunkSize, labels, distances));
+		}
+	}
+
+	/**
+	  * Fork-join task updating the seed distances of a range of canopies, split while it holds more than chunkSize
+	  * points. Canopies are not shared between tasks, so each one updates its points in place.
+	  */
+	private class SeedingTask extends RecursiveTask<Double> {
+		private static final long serialVersionUID = 1L;
+
+		private final int from, to, chunkSize;
+		private final DataPointVector candidates;
+		private final int first;
+
+		SeedingTask(int from, int to, int chunkSize, DataPointVector candidates, int first) {
+			this.from = from;
+			this.to = to;
+			this.chunkSize = chunkSize;
+			this.candidates = candidates;
+			this.first = first;
+		}
+
+		@Override
+		protected Double compute() {
+			if(to - from <= 1 || canopyOffsets[to] - canopyOffsets[from] <= chunkSize) {
+				return updateSeedDistances(from, to, candidates, first);
+			}
+			int middle = (from + to) >>> 1;
+			SeedingTask left = new SeedingTask(from, middle, chunkSize, candidates, first);
+			left.fork();
+			double cost = new SeedingTask(middle, to, chunkSize, candidates, first).compute();
+			return cost + left.join();
+		}
+	}
+
+	/**
+	  * Finds, for each canopy, the indices of the k-Means Centroids within T1 of its center.
+	  * The centroids are sorted by temperature and each canopy only visits the run within T1 of its center,
+	  * so the cost grows with the size of the lists rather than with canopies times k. Canopies whose centers
+	  * share a temperature share one list.
+	  *
+	  * @param kCentroids Broadcasted k-Means Centroids.
+	  * @return int[][] Centroid indices per canopy id in increasing order, an empty array for canopies with no centroid.
+	  */
+	private int[][] buildCanopyCentroidIndex(DataPointVector kCentroids) {
+		int[][] canopyCentroids = new int[canopyCenters.size()][];
+		int[] centroidsByTemperature = sortByTemperature(kCentroids);
+		int[] sortedCentroidTemperatures = new int[kCentroids.size()];
+		for(int j = 0; j < kCentroids.size(); j++) {
+			sortedCentroidTemperatures[j] = kCentroids.getTemperature(centroidsByTemperature[j]);
+		}
+		int[] centroidList = new int[kCentroids.size()];
+
+		int[] previousList = null;
+		for(int i = 0; i < canopiesByTemperature.length; i++) {
+			int canopy = canopiesByTemperature[i];
+			int canopyTemperature = sortedCanopyTemperatures[i];
+			if(i > 0 && canopyTemperature == sortedCanopyTemperatures[i - 1]) {
+				canopyCentroids[canopy] = previousList;
+				continue;
+			}
+
+			// Collect the run of centroids within T1, then restore index order
+			int length = 0;
+			for(int j = firstWithinT1(sortedCentroidTemperatures, canopyTemperature);
+					j < sortedCentroidTemperatures.length
+					&& DataPoint.withinT1(canopyTemperature, sortedCentroidTemperatures[j]); j++) {
+				centroidList[length++] = centroidsByTemperature[j];
+			}
+			Arrays.sort(centroidList, 0, length);
+			previousList = Arrays.copyOf(centroidList, length);
+			canopyCentroids[canopy] = previousList;
+		}
+		return canopyCentroids;
+	}
+
+	/**
+	  * Updates the cached centroids and canopy index with a broadcast CentroidDelta.
+	  * A full broadcast rebuilds the index. Otherwise only the canopies a moved centroid enters or leaves are changed,
+	  * found among the canopies within T1 of its old or new position.
+	  *
+	  * @param delta Broadcast of this iteration.
+	  */
+	private void applyCentroidDelta(CentroidDelta delta)
+	throws TwisterException {
+		if(delta.isFull()) {
+			kCentroids = delta.applyTo(null);
+			canopyCentroids = buildCanopyCentroidIndex(kCentroids);
+			centroidIteration = delta.getIteration();
+			return;
+		}
+		if(delta.getBaseIteration() != centroidIteration || kCentroids.size() != delta.getNumCentroids()) {
+			throw new TwisterException("Map task holds the centroids of iteration " + centroidIteration
+					+ ", cannot apply a delta against iteration " + delta.getBaseIteration());
+		}
+
+		DataPointVector moved = delta.getCentroids();
+		for(int i = 0; i < delta.size(); i++) {
+			int j = delta.getIndex(i);
+			int oldTemperature = kCentroids.getTemperature(j);
+			int newTemperature = moved.getTemperature(i);
+			kCentroids.set(j, moved.getYear(i), newTemperature, moved.getCount(i));
+
+			int oldFirst = firstWithinT1(sortedCanopyTemperatures, oldTemperature);
+			int newFirst = firstWithinT1(sortedCanopyTemperatures, newTemperature);
+			int next = updateCanopyRun(j, oldTemperature, newTemperature, Math.min(oldFirst, newFirst), -1);
+			updateCanopyRun(j, oldTemperature, newTemperature, Math.max(oldFirst, newFirst), next);
+		}
+		centroidIteration = delta.getIteration();
+	}
+
+	/**
+	  * Moves a centroid in or out of the lists of the run of canopies (in temperature order) starting at first
+	  * that lie within T1 of its old or new temperature.
+	  *
+	  * @param j Index of the moved centroid.
+	  * @param oldTemperature Temperature before the move.
+	  * @param newTemperature Temperature after the move.
+	  * @param first Position in canopiesByTemperature to start at.
+	  * @param done Position up to which canopies were already updated, -1 if none.
+	  * @return int Position after the last canopy visited.
+	  */
+	private int updateCanopyRun(int j, int oldTemperature, int newTemperature, int first, int done) {
+		int i = Math.max(first, done);
+		for(; i < canopiesByTemperature.length; i++) {
+			int canopyTemperature = sortedCanopyTemperatures[i];
+			boolean wasWithin = DataPoint.withinT1(canopyTemperature, oldTemperature);
+			boolean isWithin = DataPoint.withinT1(canopyTemperature, newTemperature);
+			if(!wasWithin && !isWithin) {
+				break;
+			}
+			int c = canopiesByTemperature[i];
+			if(wasWithin && !isWithin) {
+				canopyCentroids[c] = removeIndex(canopyCentroids[c], j);
+			} else if(isWithin && !wasWithin) {
+				canopyCentroids[c] = insertIndex(canopyCentroids[c], j);
+			}
+		}
+		return i;
+	}
+
+	/**
+	  * Returns a copy of a sorted index list with an index inserted in order.
+	  */
+	private static int[] insertIndex(int[] list, int index) {
+		int position = -(Arrays.binarySearch(list, index) + 1);
+		int[] result = new int[list.length + 1];
+		System.arraycopy(list, 0, result, 0, position);
+		result[position] = index;
+		System.arraycopy(list, position, result, position + 1, list.length - position);
+		return result;
+	}
+
+	/**
+	  * Returns a copy of a sorted index list without an index.
+	  */
+	private static int[] removeIndex(int[] list, int index) {
+		int position = Arrays.binarySearch(list, index);
+		int[] result = new int[list.length - 1];
+		System.arraycopy(list, 0, result, 0, position);
+		System.arraycopy(list, position + 1, result, position, list.length - position - 1);
+		return result;
 	}
-}
+}
\ No newline at end of file
@@ -3,7 +3,10 @@
   */
 package ccimr.clustering;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import cgl.imr.base.Key;
 import cgl.imr.base.ReduceOutputCollector;
@@ -14,17 +17,54 @@ import cgl.imr.base.Value;
 import cgl.imr.base.impl.JobConf;
 import cgl.imr.base.impl.ReducerConf;
 import cgl.imr.types.BytesValue;
+import cgl.imr.types.StringKey;
 
-import ccimr.types.DataPoint;
 import ccimr.types.DataPointVector;
+import ccimr.types.LabelReport;
+import ccimr.types.MapTaskMetrics;
+import ccimr.types.SeedingStep;
+import ccimr.types.ShardKey;
 
 public class ClusteringReducer implements ReduceTask {
 
+	/**
+	  * Per-centroid accumulators, kept across iterations and only reallocated when k grows.
+	  */
+	private long[] yearSums = new long[0], temperatureSums = new long[0], countSums = new long[0];
+
+	/**
+	  * Output vector, reused across iterations.
+	  */
+	private DataPointVector newCentroids = new DataPointVector();
+
+	/**
+	  * Mini-batch state of every shard this task reduces, by key, kept across iterations.
+	  */
+	private Map<Key, MiniBatchState> miniBatchStates = new HashMap<Key, MiniBatchState>();
+
+	/**
+	  * Mini-batch state of a shard: the exact position of every centroid and the number of points it was given
+	  * by all mini-batches so far. The positions are kept as doubles because the updates shrink with the learning
+	  * rate and would be lost to the integer rounding of DataPointVector.
+	  */
+	private static class MiniBatchState {
+		double[] years, temperatures;
+		long[] counts;
+
+		MiniBatchState(int numCentroids) {
+			years = new double[numCentroids];
+			temperatures = new double[numCentroids];
+			counts = new long[numCentroids];
+		}
+	}
+
 	public void close() throws TwisterException {
 	}
 
 	public void configure(JobConf jobConf, ReducerConf reducerConf)
 			throws TwisterException {
+		DataPointVector.setDeflate(ClusteringConf.getBoolean(jobConf, ClusteringConf.WIRE_DEFLATE,
+				ClusteringConf.DEFAULT_WIRE_DEFLATE));
 	}
 
 	public void reduce(ReduceOutputCollector collector, Key key, List<Value> values)
@@ -34,39 +74,56 @@ public class ClusteringReducer implements ReduceTask {
 		}
 
 		try {
-			DataPointVector mapperCentroids;
-			BytesValue val = (BytesValue) values.get(0);
-			DataPointVector tmpCentroids = new DataPointVector();
-			tmpCentroids.fromBytes(val.getBytes());
-
-			DataPointVector newCentroids = new DataPointVector();
-			long temp[][] = new long[tmpCentroids.size()][3];
-			for(int i = 0; i < tmpCentroids.size(); i++) {
-				temp[i][0] = temp[i][1] = temp[i][2] = 0;
+			if(new StringKey(ClusteringMapper.METRICS_KEY).equals(key)) {
+				collector.collect(key, new BytesValue(concatenateMetrics(values).getBytes()));
+				return;
+			}
+			if(new StringKey(ClusteringMapper.LABELS_KEY).equals(key)) {
+				collector.collect(key, new BytesValue(mergeLabels(values).getBytes()));
+				return;
+			}
+			if(new StringKey(ClusteringMapper.SEEDING_KEY).equals(key)) {
+				collector.collect(key, new BytesValue(mergeSeeding(values).getBytes()));
+				return;
+			}
+
+			// Size the accumulators from the first mapper output
+			int numCentroids = DataPointVector.sizeOf(values.get(0).getBytes());
+			if(yearSums.length < numCentroids) {
+				yearSums = new long[numCentroids];
+				temperatureSums = new long[numCentroids];
+				countSums = new long[numCentroids];
+			} else {
+				Arrays.fill(yearSums, 0, numCentroids, 0);
+				Arrays.fill(temperatureSums, 0, numCentroids, 0);
+				Arrays.fill(countSums, 0, numCentroids, 0);
 			}
-			int numMapTasks = values.size();
 
+			// Add every mapper's sums straight from its payload, dense or sparse
+			int numMapTasks = values.size();
 			for(int i = 0; i < numMapTasks; i++) {
-				val = (BytesValue) values.get(i);
-				mapperCentroids = new DataPointVector();
-				mapperCentroids.fromBytes(val.getBytes());
-
-				for(int j = 0; j < tmpCentroids.size(); j++) {
-					temp[j][0] += mapperCentroids.get(j).year;
-					temp[j][1] += mapperCentroids.get(j).temperature;
-					temp[j][2] += mapperCentroids.get(j).count;
-					// newCentroids.sumDataPointToElement(j, mapperCentroids.get(j));
-					// newCentroids.get(j).count += mapperCentroids.get(j).count;
-				}
+				BytesValue val = (BytesValue) values.get(i);
+				DataPointVector.sumBytes(val.getBytes(), yearSums, temperatureSums, countSums);
 			}
 
-			for(int i = 0; i < tmpCentroids.size(); i++) {
-				if(temp[i][2]!=0) {
-					temp[i][0] /= temp[i][2];
-					temp[i][1] /= temp[i][2];
-					newCentroids.add(new DataPoint(temp[i][0]+","+temp[i][1]));
+			// Average the centroids. Every centroid keeps its index; an empty one is emitted with a count of 0
+			// and left for the driver to fill in with its previous position.
+			// Each key is one shard of the centroids, mini-batch sums if the key says so
+			MiniBatchState miniBatch = null;
+			if(key instanceof ShardKey && ((ShardKey) key).isMiniBatch()) {
+				miniBatch = updateMiniBatch(key, numCentroids);
+			}
+			newCentroids.clear();
+			newCentroids.ensureCapacity(numCentroids);
+			for(int i = 0; i < numCentroids; i++) {
+				int count = (int) Math.min(countSums[i], Integer.MAX_VALUE);
+				if(countSums[i] == 0) {
+					newCentroids.add(0, 0, 0);
+				} else if(miniBatch != null) {
+					newCentroids.add((int) Math.round(miniBatch.years[i]), (int) Math.round(miniBatch.temperatures[i]), count);
+				} else {
+					newCentroids.add((int) (yearSums[i] / countSums[i]), (int) (temperatureSums[i] / countSums[i]), count);
 				}
-				// newCentroids.get(i).averageDataPoint();
 			}
 
 			collector.collect(key, new BytesValue(newCentroids.getBytes()));
@@ -75,4 +132,84 @@ public class ClusteringReducer implements ReduceTask {
 			throw new TwisterException(e);
 		}
 	}
+
+	/**
+	  * Concatenates the MapTaskMetrics records of all map tasks.
+	  *
+	  * @param values Records emitted by the map tasks.
+	  * @return MapTaskMetrics One record per map task.
+	  */
+	private static MapTaskMetrics concatenateMetrics(List<Value> values)
+	throws SerializationException {
+		MapTaskMetrics metrics = new MapTaskMetrics();
+		MapTaskMetrics record = new MapTaskMetrics();
+		for(Value value : values) {
+			record.fromBytes(value.getBytes());
+			metrics.addAll(record);
+		}
+		return metrics;
+	}
+
+	/**
+	  * Merges the answers of all map tasks to a seeding step.
+	  *
+	  * @param values Answers emitted by the map tasks.
+	  * @return SeedingStep The answer of the job.
+	  */
+	private static SeedingStep mergeSeeding(List<Value> values)
+	throws SerializationException {
+		SeedingStep seeding = new SeedingStep();
+		seeding.fromBytes(values.get(0).getBytes());
+		SeedingStep answer = new SeedingStep();
+		for(int i = 1; i < values.size(); i++) {
+			answer.fromBytes(values.get(i).getBytes());
+			seeding.merge(answer);
+		}
+		return seeding;
+	}
+
+	/**
+	  * Adds up the reports of the label files written by all map tasks.
+	  *
+	  * @param values Reports emitted by the map tasks.
+	  * @return LabelReport The totals of the job.
+	  */
+	private static LabelReport mergeLabels(List<Value> values)
+	throws SerializationException {
+		LabelReport report = new LabelReport();
+		report.fromBytes(values.get(0).getBytes());
+		LabelReport answer = new LabelReport();
+		for(int i = 1; i < values.size(); i++) {
+			answer.fromBytes(values.get(i).getBytes());
+			report.merge(answer);
+		}
+		return report;
+	}
+
+	/**
+	  * Moves every centroid of a mini-batch iteration towards the mean of the sampled points assigned to it, with a
+	  * learning rate of their count over all points the centroid was given so far (Sculley's mini-batch k-Means):
+	  * c += (sum - count * c) / totalCount. A centroid's first mini-batch moves it to the mean of its sample.
+	  * The state of a shard is reset when its size changes.
+	  *
+	  * @param key Key of the shard.
+	  * @param numCentroids Number of centroids in the shard, with the sums of this iteration in the accumulators.
+	  * @return MiniBatchState The updated state of the shard.
+	  */
+	private MiniBatchState updateMiniBatch(Key key, int numCentroids) {
+		MiniBatchState state = miniBatchStates.get(key);
+		if(state == null || state.counts.length != numCentroids) {
+			state = new MiniBatchState(numCentroids);
+			miniBatchStates.put(key, state);
+		}
+		for(int i = 0; i < numCentroids; i++) {
+			if(countSums[i] == 0) {
+				continue;
+			}
+			state.counts[i] += countSums[i];
+			state.years[i] += (yearSums[i] - countSums[i] * state.years[i]) / state.counts[i];
+			state.temperatures[i] += (temperatureSums[i] - countSums[i] * state.temperatures[i]) / state.counts[i];
+		}
+		return state;
+	}
 }
\ No newline at end of file
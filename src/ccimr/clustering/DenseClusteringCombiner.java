@@ -0,0 +1,53 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.clustering;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import cgl.imr.base.Combiner;
+import cgl.imr.base.Key;
+import cgl.imr.base.SerializationException;
+import cgl.imr.base.TwisterException;
+import cgl.imr.base.Value;
+import cgl.imr.base.impl.JobConf;
+import cgl.imr.types.BytesValue;
+
+import ccimr.types.DensePointVector;
+
+/**
+  * Combiner of the dense N-dimensional clustering, the counterpart of ClusteringCombiner.
+  */
+public class DenseClusteringCombiner implements Combiner {
+
+	DensePointVector results;
+
+	public DenseClusteringCombiner() {
+		results = new DensePointVector();
+	}
+
+	public void close() throws TwisterException {
+	}
+
+	public void combine(Map<Key, Value> keyValues) throws TwisterException {
+		assert (keyValues.size() == 1); // There should be a single value here.
+		Iterator<Key> ite = keyValues.keySet().iterator();
+		Key key = ite.next();
+		BytesValue val = (BytesValue) keyValues.get(key);
+		try {
+			// Use a fresh vector each time, the driver keeps the previous results to compute the error
+			this.results = new DensePointVector();
+			this.results.fromBytes(val.getBytes());
+		} catch (SerializationException e) {
+			throw new TwisterException(e);
+		}
+	}
+
+	public void configure(JobConf jobConf) throws TwisterException {
+	}
+
+	public DensePointVector getResults() {
+		return results;
+	}
+}
@@ -0,0 +1,174 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.clustering;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+import cgl.imr.base.TwisterException;
+import cgl.imr.base.impl.JobConf;
+
+import ccimr.types.DensePoint;
+import ccimr.types.DensePointVector;
+import ccimr.types.DistanceMetric;
+
+/**
+  * Iteration loop of the dense N-dimensional clustering, run by ClusteringDriver when ccimr.dimensions is set.
+  * The centroid file holds one point per line, as comma separated coordinates. Convergence is measured
+  * with the expensive metric against ccimr.convergence.threshold. Checkpoints are not written for dense runs.
+  */
+public class DenseClusteringDriver {
+
+	/**
+	  * Settings of the [year, temperature] tasks the dense tasks do not implement; a run setting any of them fails.
+	  */
+	private static final String[] UNSUPPORTED_PROPERTIES = {
+		ClusteringConf.MAPPER_THREADS,
+		ClusteringConf.REDUCERS,
+		ClusteringConf.MAPPER_BOUNDS,
+		ClusteringConf.MAPPER_CANOPY_SUMS,
+		ClusteringConf.PARTITION_CACHE,
+		ClusteringConf.DELTA_BROADCAST,
+		ClusteringConf.DELTA_TOLERANCE,
+		ClusteringConf.MINIBATCH_FRACTION,
+		ClusteringConf.MINIBATCH_SEED,
+		ClusteringConf.MINIBATCH_POLISH,
+		ClusteringConf.METRICS_FILE,
+		ClusteringConf.WIRE_DEFLATE,
+		ClusteringConf.CHECKPOINT_FILE,
+		ClusteringConf.CHECKPOINT_INTERVAL,
+		ClusteringConf.RESUME,
+		ClusteringConf.INCREMENTAL,
+		ClusteringConf.INCREMENTAL_REFINE,
+		ClusteringConf.INCREMENTAL_PARTITIONS,
+		ClusteringConf.INCREMENTAL_MAP_TASKS,
+		ClusteringConf.LABELS_DIR,
+		ClusteringConf.LABELS_FORMAT,
+		ClusteringConf.LABELS_DISTANCES,
+		ClusteringConf.SEEDING_ROUNDS,
+		ClusteringConf.SEEDING_K,
+		ClusteringConf.SEEDING_OVERSAMPLING,
+		ClusteringConf.SEEDING_SEED,
+		ClusteringConf.SEEDING_CANOPY
+	};
+
+	public void driveMapReduce(String partitionFile, int numMapTasks,
+			String centroidFile) throws Exception {
+		long beforeTime = System.currentTimeMillis();
+		int numReducers = 1; // we need only one reducer for the above
+
+		// JobConfigurations
+		JobConf jobConf = new JobConf("canopyclustering-dense-map-reduce");
+		jobConf.setMapperClass(DenseClusteringMapper.class);
+		jobConf.setReducerClass(DenseClusteringReducer.class);
+		jobConf.setCombinerClass(DenseClusteringCombiner.class);
+		jobConf.setNumMapTasks(numMapTasks);
+		jobConf.setNumReduceTasks(numReducers);
+		ClusteringConf.copySystemProperties(jobConf);
+		checkProperties(jobConf);
+
+		int dimensions = ClusteringConf.getInt(jobConf, ClusteringConf.DIMENSIONS, ClusteringConf.DEFAULT_DIMENSIONS);
+		DistanceMetric expensiveMetric = ClusteringConf.getMetric(jobConf, ClusteringConf.EXPENSIVE_METRIC,
+				ClusteringConf.DEFAULT_EXPENSIVE_METRIC);
+		double threshold = ClusteringConf.getDouble(jobConf, ClusteringConf.CONVERGENCE_THRESHOLD,
+				ClusteringConf.DEFAULT_CONVERGENCE_THRESHOLD);
+
+		DensePointVector centroids = loadCentroids(centroidFile, dimensions);
+		System.out.println("Centroids: " + centroids);
+
+		IterationDriver driver = ClusteringDriver.createIterationDriver(jobConf, partitionFile, numMapTasks,
+				DenseClusteringMapper.class, DenseClusteringReducer.class, DenseClusteringCombiner.class, numReducers);
+
+		double totalError = 0;
+		int loopCount = 0;
+
+		//Main iteration for K-Means clustering
+		boolean complete = false;
+		while (!complete) {
+			driver.runMapReduceBCast(centroids);
+			DensePointVector newCentroids = ((DenseClusteringCombiner) driver.getCurrentCombiner()).getResults();
+			keepEmptyCentroids(centroids, newCentroids);
+			totalError = getError(expensiveMetric, centroids, newCentroids);
+			centroids = newCentroids;
+			if (totalError < threshold) {
+				complete = true;
+				break;
+			}
+			loopCount++;
+		}
+		// Print the test statistics
+		double timeInSeconds = ((double) (System.currentTimeMillis() - beforeTime)) / 1000;
+		System.out.println("Selected Centroids: " + centroids);
+		System.out.println("Total Time for Canopy Clustering : " + timeInSeconds);
+		System.out.println("Total loop count : " + (loopCount + 1));
+		driver.close();
+	}
+
+	/**
+	  * Fails the run if any setting the dense tasks do not implement is set, instead of silently ignoring it.
+	  *
+	  * @param jobConf JobConf holding the clustering properties.
+	  * @throws TwisterException If an unsupported property is set.
+	  */
+	private void checkProperties(JobConf jobConf) throws TwisterException {
+		StringBuilder unsupported = new StringBuilder();
+		for(String property : UNSUPPORTED_PROPERTIES) {
+			if(jobConf.getProperty(property) != null) {
+				unsupported.append(unsupported.length() == 0 ? "" : ", ").append(property);
+			}
+		}
+		if(unsupported.length() > 0) {
+			throw new TwisterException("Dense clustering (" + ClusteringConf.DIMENSIONS + " > 0) does not support "
+					+ unsupported);
+		}
+	}
+
+	/**
+	  * Reads the centroid file, one point of comma separated coordinates per line.
+	  *
+	  * @param centroidFile Path of the centroid file.
+	  * @param dimensions Number of coordinates of each point.
+	  * @return DensePointVector The centroids.
+	  * @throws IOException If the file cannot be read.
+	  */
+	private DensePointVector loadCentroids(String centroidFile, int dimensions) throws IOException {
+		DensePointVector centroids = new DensePointVector(dimensions);
+		BufferedReader reader = new BufferedReader(new FileReader(centroidFile));
+		try {
+			String line = null;
+			while((line = reader.readLine()) != null) {
+				if(line.length() > 0) {
+					centroids.add(new DensePoint(line, dimensions));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return centroids;
+	}
+
+	/**
+	  * Gives every centroid no point was assigned to (count 0) its previous position.
+	  *
+	  * @param cData Centroids of the previous iteration.
+	  * @param newCData Centroids computed in this iteration, updated in place.
+	  */
+	public void keepEmptyCentroids(DensePointVector cData, DensePointVector newCData) {
+		for(int i = 0; i < newCData.size(); i++) {
+			if(newCData.getCount(i) == 0) {
+				newCData.set(i, cData.getValues(), cData.getOffset(i), 0);
+			}
+		}
+	}
+
+	public double getError(DistanceMetric metric, DensePointVector cData, DensePointVector newCData) {
+		double totalError = 0;
+		for(int i = 0; i < cData.size(); i++) {
+			totalError += metric.distance(cData.getValues(), cData.getOffset(i),
+					newCData.getValues(), newCData.getOffset(i), cData.dimensions());
+		}
+		return totalError;
+	}
+}
@@ -0,0 +1,220 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.clustering;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import cgl.imr.base.Key;
+import cgl.imr.base.MapOutputCollector;
+import cgl.imr.base.MapTask;
+import cgl.imr.base.SerializationException;
+import cgl.imr.base.TwisterException;
+import cgl.imr.base.Value;
+import cgl.imr.base.impl.JobConf;
+import cgl.imr.base.impl.MapperConf;
+import cgl.imr.data.file.FileData;
+import cgl.imr.types.BytesValue;
+import cgl.imr.types.StringKey;
+
+import ccimr.types.DensePoint;
+import ccimr.types.DensePointVector;
+import ccimr.types.DistanceMetric;
+
+/**
+  * Map task of the dense N-dimensional clustering, the counterpart of ClusteringMapper.
+  * The partition holds "canopyCenter\tdataPoint" lines where both points are comma separated coordinates,
+  * and the canopy centers file holds one such point per line. A centroid is a candidate for the points of a
+  * canopy if it lies within T1 of the canopy center under the cheap metric; points are assigned to the
+  * nearest candidate under the expensive metric.
+  */
+public class DenseClusteringMapper implements MapTask {
+
+	private int dimensions;
+	private DistanceMetric cheapMetric, expensiveMetric;
+	private double t1;
+
+	private FileData fileData;
+	private DensePointVector canopyCenters;
+
+	/**
+	  * Data points of the partition, grouped by canopy id (index into canopyCenters).
+	  * The points of canopy c are at [canopyOffsets[c], canopyOffsets[c + 1]).
+	  */
+	private DensePointVector dataPoints;
+	private int[] canopyOffsets;
+
+	public void close() throws TwisterException {
+	}
+
+	public void configure(JobConf jobConf, MapperConf mapConf) throws TwisterException {
+		dimensions = ClusteringConf.getInt(jobConf, ClusteringConf.DIMENSIONS, ClusteringConf.DEFAULT_DIMENSIONS);
+		if(dimensions <= 0) {
+			throw new TwisterException("DenseClusteringMapper needs " + ClusteringConf.DIMENSIONS + " > 0");
+		}
+		cheapMetric = ClusteringConf.getMetric(jobConf, ClusteringConf.CHEAP_METRIC, ClusteringConf.DEFAULT_CHEAP_METRIC);
+		expensiveMetric = ClusteringConf.getMetric(jobConf, ClusteringConf.EXPENSIVE_METRIC,
+				ClusteringConf.DEFAULT_EXPENSIVE_METRIC);
+		t1 = ClusteringConf.getDouble(jobConf, ClusteringConf.T1, ClusteringConf.DEFAULT_T1);
+
+		canopyCenters = new DensePointVector(dimensions);
+		fileData = (FileData) mapConf.getDataPartition();
+
+		try {
+			// Load Canopy Centers
+			String filename = fileData.getFileName();
+			int dataPosition = filename.indexOf("data");
+			String canopyCentersFile = filename.substring(0, dataPosition) + "data/" + ClusteringDriver.canopyCentersFileLocation;
+			BufferedReader reader = new BufferedReader(new FileReader(canopyCentersFile));
+			String line = null;
+			while((line = reader.readLine()) != null) {
+				if(line.length() > 0) {
+					canopyCenters.add(new DensePoint(line, dimensions));
+				}
+			}
+			reader.close();
+
+			loadPartition(filename);
+		} catch (Exception e) {
+			e.printStackTrace();
+			throw new TwisterException(e);
+		}
+	}
+
+	/**
+	  * Loads a text partition and groups its points by canopy id with a counting sort.
+	  * Records whose canopy center is not a known canopy can never be assigned and are dropped.
+	  *
+	  * @param filename Path to the text partition.
+	  */
+	private void loadPartition(String filename)
+	throws IOException {
+		HashMap<DensePoint, Integer> canopyCenterIds = new HashMap<DensePoint, Integer>();
+		for(int i = 0; i < canopyCenters.size(); i++) {
+			canopyCenterIds.put(canopyCenters.get(i), i);
+		}
+
+		DensePointVector points = new DensePointVector(dimensions);
+		int[] pointCanopyIds = new int[16];
+		double[] point = new double[dimensions];
+		DensePoint canopyCenter = new DensePoint(dimensions);
+
+		BufferedReader reader = new BufferedReader(new FileReader(filename));
+		String line = null;
+		try {
+			while((line = reader.readLine()) != null) {
+				if(line.length() == 0) {
+					continue;
+				}
+				int tab = line.indexOf('\t');
+				if(tab < 0) {
+					throw new IOException("Malformed record: " + line);
+				}
+				DensePoint.parse(line, 0, tab, canopyCenter.coordinates, 0, dimensions);
+				Integer canopyId = canopyCenterIds.get(canopyCenter);
+				if(canopyId == null) {
+					continue;
+				}
+				DensePoint.parse(line, tab + 1, line.length(), point, 0, dimensions);
+
+				if(points.size() == pointCanopyIds.length) {
+					pointCanopyIds = Arrays.copyOf(pointCanopyIds, points.size() + (points.size() >> 1));
+				}
+				pointCanopyIds[points.size()] = canopyId;
+				points.add(point, 0, 0);
+			}
+		} finally {
+			reader.close();
+		}
+
+		int numCanopies = canopyCenters.size();
+		int numPoints = points.size();
+		canopyOffsets = new int[numCanopies + 1];
+		for(int k = 0; k < numPoints; k++) {
+			canopyOffsets[pointCanopyIds[k] + 1]++;
+		}
+		for(int c = 0; c < numCanopies; c++) {
+			canopyOffsets[c + 1] += canopyOffsets[c];
+		}
+
+		int[] next = Arrays.copyOf(canopyOffsets, numCanopies);
+		dataPoints = new DensePointVector(dimensions, numPoints);
+		double[] values = points.getValues();
+		for(int k = 0; k < numPoints; k++) {
+			dataPoints.set(next[pointCanopyIds[k]]++, values, k * dimensions, 0);
+		}
+	}
+
+	public void map(MapOutputCollector collector, Key key, Value val)
+	throws TwisterException {
+		try {
+			// Read broadcasted k-Centroids
+			DensePointVector kCentroids = new DensePointVector();
+			kCentroids.fromBytes(val.getBytes());
+			if(kCentroids.dimensions() != dimensions) {
+				throw new TwisterException("Centroids have " + kCentroids.dimensions() + " dimensions, expected " + dimensions);
+			}
+
+			DensePointVector newCentroids = new DensePointVector(dimensions, kCentroids.size());
+			assign(kCentroids, newCentroids);
+
+			collector.collect(new StringKey("kmeans-map-to-reduce-key"),
+					new BytesValue(newCentroids.getBytes()));
+
+		} catch (SerializationException e) {
+			throw new TwisterException(e);
+		}
+	}
+
+	/**
+	  * Assigns every data point to its nearest candidate centroid, canopy block by canopy block,
+	  * adding it to the running sum and count of that centroid.
+	  *
+	  * @param kCentroids Broadcasted k-Means Centroids.
+	  * @param sums Per-centroid sums and counts to add the assigned points to.
+	  */
+	private void assign(DensePointVector kCentroids, DensePointVector sums) {
+		double[] centroidValues = kCentroids.getValues();
+		double[] canopyValues = canopyCenters.getValues();
+		double[] pointValues = dataPoints.getValues();
+		int[] candidates = new int[kCentroids.size()];
+
+		for(int c = 0; c < canopyCenters.size(); c++) {
+			if(canopyOffsets[c] == canopyOffsets[c + 1]) {
+				continue;
+			}
+
+			// Find the centroids within T1 of this canopy center
+			int numCandidates = 0;
+			for(int j = 0; j < kCentroids.size(); j++) {
+				if(cheapMetric.distance(canopyValues, c * dimensions, centroidValues, j * dimensions, dimensions) < t1) {
+					candidates[numCandidates++] = j;
+				}
+			}
+			if(numCandidates == 0) {
+				continue;
+			}
+
+			for(int k = canopyOffsets[c]; k < canopyOffsets[c + 1]; k++) {
+				int pointOffset = k * dimensions;
+				double minDistance = Double.MAX_VALUE;
+				int nearest = candidates[0];
+				for(int i = 0; i < numCandidates; i++) {
+					double distance = expensiveMetric.distance(pointValues, pointOffset,
+							centroidValues, candidates[i] * dimensions, dimensions);
+					if(distance < minDistance) {
+						minDistance = distance;
+						nearest = candidates[i];
+					}
+				}
+				sums.sumToElement(nearest, pointValues, pointOffset);
+				sums.incrementCounter(nearest);
+			}
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.clustering;
+
+import java.util.Arrays;
+import java.util.List;
+
+import cgl.imr.base.Key;
+import cgl.imr.base.ReduceOutputCollector;
+import cgl.imr.base.ReduceTask;
+import cgl.imr.base.SerializationException;
+import cgl.imr.base.TwisterException;
+import cgl.imr.base.Value;
+import cgl.imr.base.impl.JobConf;
+import cgl.imr.base.impl.ReducerConf;
+import cgl.imr.types.BytesValue;
+
+import ccimr.types.DensePointVector;
+
+/**
+  * Reduce task of the dense N-dimensional clustering, the counterpart of ClusteringReducer.
+  */
+public class DenseClusteringReducer implements ReduceTask {
+
+	/**
+	  * Per-centroid accumulators, kept across iterations and only reallocated when they grow.
+	  */
+	private double[] sums = new double[0];
+	private long[] countSums = new long[0];
+
+	public void close() throws TwisterException {
+	}
+
+	public void configure(JobConf jobConf, ReducerConf reducerConf)
+			throws TwisterException {
+	}
+
+	public void reduce(ReduceOutputCollector collector, Key key, List<Value> values)
+	throws TwisterException {
+		if (values.size() <= 0) {
+			throw new TwisterException("Reduce input error no values.");
+		}
+
+		try {
+			// Size the accumulators from the first mapper output
+			byte[] first = values.get(0).getBytes();
+			int numCentroids = DensePointVector.sizeOf(first);
+			int dimensions = DensePointVector.dimensionsOf(first);
+			if(countSums.length < numCentroids || sums.length < numCentroids * dimensions) {
+				sums = new double[numCentroids * dimensions];
+				countSums = new long[numCentroids];
+			} else {
+				Arrays.fill(sums, 0, numCentroids * dimensions, 0);
+				Arrays.fill(countSums, 0, numCentroids, 0);
+			}
+
+			// Add every mapper's sums straight from its payload
+			for(int i = 0; i < values.size(); i++) {
+				BytesValue val = (BytesValue) values.get(i);
+				DensePointVector.sumBytes(val.getBytes(), sums, countSums);
+			}
+
+			// Average the centroids. As in ClusteringReducer, an empty centroid keeps its index with a count of 0.
+			DensePointVector newCentroids = new DensePointVector(dimensions, numCentroids);
+			double[] centroid = new double[dimensions];
+			for(int i = 0; i < numCentroids; i++) {
+				if(countSums[i] != 0) {
+					for(int d = 0; d < dimensions; d++) {
+						centroid[d] = sums[i * dimensions + d] / countSums[i];
+					}
+					newCentroids.set(i, centroid, 0, (int) Math.min(countSums[i], Integer.MAX_VALUE));
+				}
+			}
+
+			collector.collect(key, new BytesValue(newCentroids.getBytes()));
+
+		} catch (SerializationException e) {
+			throw new TwisterException(e);
+		}
+	}
+}
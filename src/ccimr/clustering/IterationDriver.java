@@ -0,0 +1,34 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.clustering;
+
+import cgl.imr.base.Combiner;
+import cgl.imr.base.TwisterException;
+import cgl.imr.base.Value;
+
+/**
+  * The part of the Twister client API the clustering driver uses to run its iterations.
+  * Implemented over a TwisterDriver for cluster runs and by ccimr.local.LocalTwisterDriver for runs in a single JVM.
+  */
+public interface IterationDriver {
+
+	/**
+	  * Broadcasts a value to all map tasks, runs one MapReduce iteration and waits for it to complete.
+	  *
+	  * @param value Value broadcast to every map task.
+	  */
+	public void runMapReduceBCast(Value value) throws TwisterException;
+
+	/**
+	  * Returns the combiner holding the output of the last iteration.
+	  *
+	  * @return Combiner The current combiner.
+	  */
+	public Combiner getCurrentCombiner();
+
+	/**
+	  * Releases the resources held by the driver.
+	  */
+	public void close() throws TwisterException;
+}
@@ -0,0 +1,189 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.clustering;
+
+import java.util.Random;
+
+import cgl.imr.base.TwisterException;
+
+import ccimr.types.DataPoint;
+import ccimr.types.DataPointVector;
+import ccimr.types.SeedingStep;
+
+/**
+  * k-means|| seeding (Bahmani et al., Scalable K-Means++) of the clustering job, run by the driver through the
+  * map tasks and their loaded partitions before the first iteration.
+  * The first candidate is a point drawn uniformly from all partitions. Every round then makes the map tasks lower
+  * the distances of their points with the candidates added last (UPDATE), and draw about oversampling * k
+  * points, each with a probability proportional to its distance (SAMPLE). The last step (WEIGHT) gives every
+  * candidate the number of points nearest to it, and the driver reduces the weighted candidates to k centroids
+  * with k-means++ followed by weighted Lloyd iterations.
+  * The job runs 2 * rounds + 2 steps; each only visits the points of a partition against the new candidates.
+  */
+class KMeansParallelSeeding {
+
+	/**
+	  * Largest number of Lloyd iterations reducing the weighted candidates to k centroids.
+	  */
+	private static final int REDUCTION_LOOPS = 20;
+
+	/**
+	  * Seeds the centroids.
+	  *
+	  * @param driver Driver of the clustering job.
+	  * @param k Number of centroids to seed.
+	  * @param rounds Number of oversampling rounds.
+	  * @param oversampling Expected number of points drawn per round, as a multiple of k.
+	  * @param seed Seed of the random draws.
+	  * @return DataPointVector The seeded centroids, fewer than k if the partitions hold fewer distinct points.
+	  */
+	static DataPointVector seed(IterationDriver driver, int k, int rounds, double oversampling, long seed)
+	throws TwisterException {
+		Random random = new Random(seed);
+
+		// Each map task draws one of its points, which stands for all of them
+		DataPointVector picked = runStep(driver, new SeedingStep(SeedingStep.PICK, 0, random.nextLong(), 0, 0,
+				new DataPointVector())).getPoints();
+		int pick = choose(picked, null, random);
+		if(pick < 0) {
+			throw new TwisterException("No data points to seed the centroids from");
+		}
+		DataPointVector candidates = new DataPointVector();
+		candidates.add(picked.getYear(pick), picked.getTemperature(pick), 0);
+
+		int sent = 0;
+		for(int round = 0; round < rounds; round++) {
+			double cost = runStep(driver, new SeedingStep(SeedingStep.UPDATE, sent, 0, 0, 0,
+					candidates.subVector(sent, candidates.size()))).getCost();
+			sent = candidates.size();
+			if(cost == 0) {
+				// Every point is a candidate
+				break;
+			}
+			DataPointVector sampled = runStep(driver, new SeedingStep(SeedingStep.SAMPLE, 0, random.nextLong(), cost,
+					oversampling * k, new DataPointVector())).getPoints();
+			for(int i = 0; i < sampled.size(); i++) {
+				candidates.add(sampled.getYear(i), sampled.getTemperature(i), 0);
+			}
+		}
+
+		DataPointVector weights = runStep(driver, new SeedingStep(SeedingStep.WEIGHT, sent, 0, 0, 0,
+				candidates.subVector(sent, candidates.size()))).getPoints();
+		for(int i = 0; i < candidates.size(); i++) {
+			candidates.set(i, candidates.getYear(i), candidates.getTemperature(i), weights.getCount(i));
+		}
+		System.out.println("Seeding candidates: " + candidates.size());
+		return reduce(candidates, k, random);
+	}
+
+	/**
+	  * Broadcasts a step and returns the answer of the job.
+	  */
+	private static SeedingStep runStep(IterationDriver driver, SeedingStep step)
+	throws TwisterException {
+		driver.runMapReduceBCast(step);
+		SeedingStep answer = ((ClusteringCombiner) driver.getCurrentCombiner()).getSeeding();
+		if(answer == null || answer.getStep() != step.getStep()) {
+			throw new TwisterException("No answer to seeding step " + step.getStep());
+		}
+		return answer;
+	}
+
+	/**
+	  * Reduces weighted candidates to k centroids: k-means++ draws the centroids, each candidate with a probability
+	  * proportional to its weight times its distance to the centroids drawn so far, then weighted Lloyd iterations
+	  * move them to the weighted means of their candidates.
+	  *
+	  * @param candidates Candidates, their weights as counts.
+	  * @param k Number of centroids.
+	  * @param random Generator of the draws.
+	  * @return DataPointVector The centroids, fewer than k if fewer candidates have a positive weight and distance.
+	  */
+	private static DataPointVector reduce(DataPointVector candidates, int k, Random random) {
+		int m = candidates.size();
+		DataPointVector centroids = new DataPointVector();
+		double[] distances = new double[m];
+		int next = choose(candidates, null, random);
+		while(next >= 0 && centroids.size() < k) {
+			int year = candidates.getYear(next);
+			int temperature = candidates.getTemperature(next);
+			centroids.add(year, temperature, 0);
+			for(int i = 0; i < m; i++) {
+				double distance = DataPoint.complexDistance(candidates.getYear(i), candidates.getTemperature(i),
+						year, temperature);
+				distances[i] = (centroids.size() == 1 ? distance : Math.min(distances[i], distance));
+			}
+			next = choose(candidates, distances, random);
+		}
+
+		int[] assigned = new int[m];
+		for(int loop = 0; loop < REDUCTION_LOOPS; loop++) {
+			boolean changed = false;
+			for(int i = 0; i < m; i++) {
+				double minDistance = Double.MAX_VALUE;
+				int nearest = -1;
+				for(int j = 0; j < centroids.size(); j++) {
+					double distance = DataPoint.complexDistance(candidates.getYear(i), candidates.getTemperature(i),
+							centroids.getYear(j), centroids.getTemperature(j));
+					if(distance < minDistance) {
+						minDistance = distance;
+						nearest = j;
+					}
+				}
+				changed |= (loop == 0 || assigned[i] != nearest);
+				assigned[i] = nearest;
+			}
+			if(!changed) {
+				break;
+			}
+
+			long[] yearSums = new long[centroids.size()];
+			long[] temperatureSums = new long[centroids.size()];
+			long[] weightSums = new long[centroids.size()];
+			for(int i = 0; i < m; i++) {
+				long weight = candidates.getCount(i);
+				yearSums[assigned[i]] += weight * candidates.getYear(i);
+				temperatureSums[assigned[i]] += weight * candidates.getTemperature(i);
+				weightSums[assigned[i]] += weight;
+			}
+			for(int j = 0; j < centroids.size(); j++) {
+				if(weightSums[j] > 0) {
+					centroids.set(j, (int) (yearSums[j] / weightSums[j]), (int) (temperatureSums[j] / weightSums[j]), 0);
+				}
+			}
+		}
+		return centroids;
+	}
+
+	/**
+	  * Draws the index of a point with a probability proportional to its count, times its distance if given.
+	  *
+	  * @param points Points, their weights as counts.
+	  * @param distances Distance of every point, or null.
+	  * @param random Generator of the draw.
+	  * @return int Index of the drawn point, -1 if every point has a weight of 0.
+	  */
+	private static int choose(DataPointVector points, double[] distances, Random random) {
+		double total = 0;
+		for(int i = 0; i < points.size(); i++) {
+			total += points.getCount(i) * (distances == null ? 1 : distances[i]);
+		}
+		if(total <= 0) {
+			return -1;
+		}
+		double target = random.nextDouble() * total;
+		int last = -1;
+		for(int i = 0; i < points.size(); i++) {
+			double weight = points.getCount(i) * (distances == null ? 1 : distances[i]);
+			if(weight > 0) {
+				last = i;
+				target -= weight;
+				if(target < 0) {
+					break;
+				}
+			}
+		}
+		return last;
+	}
+}
@@ -0,0 +1,106 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.clustering;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import ccimr.types.DataPoint;
+import ccimr.types.DataPointVector;
+import ccimr.types.MapTaskMetrics;
+
+/**
+  * Per iteration report of a clustering run, written to ccimr.metrics.file as one JSON object per line:
+  *
+  * {"iteration":0,"sampled":false,"broadcastBytes":160,"mapReduceMillis":..,"combineMillis":..,"errorMillis":..,
+  *  "error":..,"movedCentroids":..,"maxMovement":..,"points":..,"distances":..,"outputBytes":..,
+  *  "mapTasks":[{"mapTask":0,"points":..,"distances":..,"outputBytes":..,"mapMillis":..},..]}
+  *
+  * mapReduceMillis is the time runMapReduceBCast() takes until the iteration completes, combine included;
+  * combineMillis is the part spent in ClusteringCombiner.combine(). movedCentroids and maxMovement (Euclidean)
+  * compare the centroids before and after the iteration.
+  * Lines are flushed as they are written, so a running job can be followed.
+  */
+class MetricsReport {
+
+	private PrintWriter writer;
+
+	/**
+	  * Opens the report, appending to the file if it exists.
+	  *
+	  * @param filename Path of the report.
+	  */
+	MetricsReport(String filename)
+	throws IOException {
+		writer = new PrintWriter(new BufferedWriter(new FileWriter(filename, true)));
+	}
+
+	/**
+	  * Writes the line of one iteration.
+	  *
+	  * @param iteration Loop count of the iteration.
+	  * @param sampled Whether the iteration was a mini-batch iteration.
+	  * @param broadcastBytes Size of the broadcast value.
+	  * @param mapReduceNanos Time of runMapReduceBCast().
+	  * @param combineNanos Time of the combiner.
+	  * @param errorNanos Time of getError().
+	  * @param error Total error of the iteration.
+	  * @param previous Centroids broadcast in the iteration.
+	  * @param current Centroids computed in the iteration.
+	  * @param metrics Records of the map tasks.
+	  */
+	void write(int iteration, boolean sampled, long broadcastBytes, long mapReduceNanos, long combineNanos,
+			long errorNanos, double error, DataPointVector previous, DataPointVector current, MapTaskMetrics metrics) {
+		int moved = 0;
+		double maxMovement = 0;
+		for(int i = 0; i < current.size(); i++) {
+			double movement = Math.sqrt(DataPoint.complexDistance(previous.getYear(i), previous.getTemperature(i),
+					current.getYear(i), current.getTemperature(i)));
+			if(movement > 0) {
+				moved++;
+				maxMovement = Math.max(maxMovement, movement);
+			}
+		}
+
+		StringBuilder line = new StringBuilder("{");
+		line.append("\"iteration\":").append(iteration);
+		line.append(",\"sampled\":").append(sampled);
+		line.append(",\"broadcastBytes\":").append(broadcastBytes);
+		line.append(",\"mapReduceMillis\":").append(millis(mapReduceNanos));
+		line.append(",\"combineMillis\":").append(millis(combineNanos));
+		line.append(",\"errorMillis\":").append(millis(errorNanos));
+		line.append(",\"error\":").append(error);
+		line.append(",\"movedCentroids\":").append(moved);
+		line.append(",\"maxMovement\":").append(maxMovement);
+		line.append(",\"points\":").append(metrics.total(MapTaskMetrics.POINTS));
+		line.append(",\"distances\":").append(metrics.total(MapTaskMetrics.DISTANCES));
+		line.append(",\"outputBytes\":").append(metrics.total(MapTaskMetrics.OUTPUT_BYTES));
+		line.append(",\"mapTasks\":[");
+		for(int i = 0; i < metrics.size(); i++) {
+			line.append(i == 0 ? "{" : ",{");
+			line.append("\"mapTask\":").append(metrics.get(i, MapTaskMetrics.MAP_TASK));
+			line.append(",\"points\":").append(metrics.get(i, MapTaskMetrics.POINTS));
+			line.append(",\"distances\":").append(metrics.get(i, MapTaskMetrics.DISTANCES));
+			line.append(",\"outputBytes\":").append(metrics.get(i, MapTaskMetrics.OUTPUT_BYTES));
+			line.append(",\"mapMillis\":").append(millis(metrics.get(i, MapTaskMetrics.MAP_NANOS)));
+			line.append("}");
+		}
+		line.append("]}");
+		writer.println(line);
+		writer.flush();
+	}
+
+	void close() {
+		writer.close();
+	}
+
+	/**
+	  * Converts nanoseconds to milliseconds with microsecond precision.
+	  */
+	private static double millis(long nanos) {
+		return Math.round(nanos / 1000.0) / 1000.0;
+	}
+}
@@ -0,0 +1,556 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.dataops;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ccimr.types.DensePoint;
+
+/**
+  * Prepares the output of the Hadoop canopy jobs for the clustering job in a single pass.
+  * Does the work of the former removeLeadingTabs.py and SplitData steps (and of PartitionFile for binary partitions)
+  * at once: the part files are read once, records are parsed and validated, and the mapper partitions are written directly, in parallel.
+  *
+  * In canopies mode the part files of the canopy center job are reduced to one "year,temperature" line per center,
+  * dropping everything up to the first tab of each line.
+  * In data mode the part files of the canopy assignment job ("canopyCenter\tdataPoint" lines) are cut into
+  * partitions of about the same size at record boundaries, and each partition is parsed and written by one worker.
+  * Malformed records are counted, reported and skipped.
+  */
+public class Ingest {
+
+	/**
+	  * System property: if true, data partitions are written in the binary PartitionFile format.
+	  */
+	public static final String BINARY_PROPERTY = "ccimr.ingest.binary";
+
+	/**
+	  * System property: number of coordinates of the points of a dense data set (see ccimr.clustering.ClusteringConf),
+	  * 0 for the [year, temperature] data set. Dense records are validated and written as text.
+	  */
+	public static final String DIMENSIONS_PROPERTY = "ccimr.dimensions";
+
+	/**
+	  * Size of the buffer each worker reads its input with.
+	  */
+	private static final int READ_BUFFER_SIZE = 1 << 20;
+
+	/**
+	  * A byte range of one input file.
+	  */
+	static class Segment {
+		final File file;
+		final long start, end;
+
+		Segment(File file, long start, long end) {
+			this.file = file;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	  * Lists the part files of a Hadoop output: the path itself if it is a file, otherwise the regular files
+	  * in the folder whose names do not start with '_' or '.' (such as _SUCCESS and .crc files), sorted by name.
+	  *
+	  * @param path File or folder.
+	  * @return List<File> Part files.
+	  */
+	static List<File> listInputs(String path)
+		throws IOException {
+		File input = new File(path);
+		if(input.isFile()) {
+			return Arrays.asList(input);
+		}
+		File[] files = input.listFiles();
+		if(files == null) {
+			throw new IOException("Cannot read " + path);
+		}
+		Arrays.sort(files);
+		List<File> inputs = new ArrayList<File>();
+		for(File file : files) {
+			if(file.isFile() && !file.getName().startsWith("_") && !file.getName().startsWith(".")) {
+				inputs.add(file);
+			}
+		}
+		if(inputs.isEmpty()) {
+			throw new IOException("No part files in " + path);
+		}
+		return inputs;
+	}
+
+	/**
+	  * Cuts the concatenated part files into ranges of about the same size, each starting at a record boundary,
+	  * and returns the segments of every range.
+	  *
+	  * @param inputs Part files.
+	  * @param numberOfPartitions Number of ranges.
+	  * @return List<List<Segment>> Segments of each range, in order. A range may be empty.
+	  */
+	static List<List<Segment>> partition(List<File> inputs, int numberOfPartitions)
+		throws IOException {
+		long[] fileStarts = new long[inputs.size() + 1];
+		for(int f = 0; f < inputs.size(); f++) {
+			fileStarts[f + 1] = fileStarts[f] + inputs.get(f).length();
+		}
+		long total = fileStarts[inputs.size()];
+
+		// Boundaries in the concatenated input, each moved to the start of the next record of its file
+		long[] boundaries = new long[numberOfPartitions + 1];
+		boundaries[numberOfPartitions] = total;
+		int f = 0;
+		for(int i = 1; i < numberOfPartitions; i++) {
+			long target = total / numberOfPartitions * i + total % numberOfPartitions * i / numberOfPartitions;
+			while(fileStarts[f + 1] <= target) {
+				f++;
+			}
+			RandomAccessFile file = new RandomAccessFile(inputs.get(f), "r");
+			try {
+				long start = SplitData.nextRecordStart(file.getChannel(), target - fileStarts[f] - 1, inputs.get(f).length());
+				boundaries[i] = Math.max(boundaries[i - 1], fileStarts[f] + start);
+			} finally {
+				file.close();
+			}
+		}
+
+		List<List<Segment>> ranges = new ArrayList<List<Segment>>();
+		for(int i = 0; i < numberOfPartitions; i++) {
+			List<Segment> segments = new ArrayList<Segment>();
+			for(int g = 0; g < inputs.size(); g++) {
+				long start = Math.max(boundaries[i], fileStarts[g]);
+				long end = Math.min(boundaries[i + 1], fileStarts[g + 1]);
+				if(start < end) {
+					segments.add(new Segment(inputs.get(g), start - fileStarts[g], end - fileStarts[g]));
+				}
+			}
+			ranges.add(segments);
+		}
+		return ranges;
+	}
+
+	/**
+	  * Receives the lines of a range, without their line terminator.
+	  */
+	interface LineHandler {
+		void line(CharSequence line) throws IOException;
+	}
+
+	/**
+	  * Reads the lines of a list of segments through a reused buffer, without creating a String per line.
+	  * The input is expected to be ASCII.
+	  *
+	  * @param segments Segments to read, in order.
+	  * @param handler Receiver of the lines.
+	  */
+	static void readLines(List<Segment> segments, LineHandler handler)
+		throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		StringBuilder line = new StringBuilder();
+		for(Segment segment : segments) {
+			RandomAccessFile file = new RandomAccessFile(segment.file, "r");
+			try {
+				FileChannel channel = file.getChannel();
+				long position = segment.start;
+				while(position < segment.end) {
+					buffer.clear();
+					buffer.limit((int) Math.min(buffer.capacity(), segment.end - position));
+					int read = channel.read(buffer, position);
+					if(read <= 0) {
+						throw new IOException("Unexpected end of " + segment.file + " at byte " + position);
+					}
+					for(int i = 0; i < read; i++) {
+						char c = (char) (buffer.get(i) & 0xff);
+						if(c == '\n') {
+							handler.line(line);
+							line.setLength(0);
+						} else {
+							line.append(c);
+						}
+					}
+					position += read;
+				}
+			} finally {
+				file.close();
+			}
+			// A part file may not end with a newline
+			if(line.length() > 0) {
+				handler.line(line);
+				line.setLength(0);
+			}
+		}
+	}
+
+	/**
+	  * Returns the index of the first character of a line after any leading tabs, spaces and carriage returns.
+	  */
+	private static int skipLeadingBlanks(CharSequence line) {
+		int i = 0;
+		while(i < line.length() && (line.charAt(i) == '\t' || line.charAt(i) == ' ' || line.charAt(i) == '\r')) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	  * Returns the length of a line without trailing carriage returns and spaces.
+	  */
+	private static int trimmedLength(CharSequence line) {
+		int length = line.length();
+		while(length > 0 && (line.charAt(length - 1) == '\r' || line.charAt(length - 1) == ' ')) {
+			length--;
+		}
+		return length;
+	}
+
+	/**
+	  * Counts the malformed records of a run and keeps the first one for the report.
+	  */
+	static class MalformedRecords {
+		private final AtomicLong count = new AtomicLong();
+		private volatile String first;
+
+		void add(CharSequence line) {
+			if(count.getAndIncrement() == 0) {
+				first = line.toString();
+			}
+		}
+
+		void report() {
+			if(count.get() > 0) {
+				System.out.println("Skipped " + count.get() + " malformed records, the first was: " + first);
+			}
+		}
+	}
+
+	/**
+	  * Writes the canopy centers from the part files of the canopy center job, one "year,temperature" line each.
+	  * Everything up to the first tab of a line (the empty Hadoop key) is dropped.
+	  *
+	  * @param inputPath Part file or folder of part files.
+	  * @param outputPath File to write the canopy centers to.
+	  * @param dimensions Number of coordinates of dense points, 0 for [year, temperature] points.
+	  * @return long Number of canopy centers written.
+	  */
+	public static long ingestCanopies(String inputPath, String outputPath, final int dimensions)
+		throws IOException {
+		List<File> inputs = listInputs(inputPath);
+		final BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath));
+		final MalformedRecords malformed = new MalformedRecords();
+		final long[] written = new long[1];
+		final int[] fields = new int[2];
+		final double[] coordinates = new double[Math.max(dimensions, 1)];
+		try {
+			List<Segment> segments = new ArrayList<Segment>();
+			for(File input : inputs) {
+				segments.add(new Segment(input, 0, input.length()));
+			}
+			readLines(segments, new LineHandler() {
+				public void line(CharSequence line) throws IOException {
+					int start = indexOf(line, '\t', 0, line.length()) + 1;
+					int end = line.length();
+					while(start < end && line.charAt(start) <= ' ') {
+						start++;
+					}
+					while(end > start && line.charAt(end - 1) <= ' ') {
+						end--;
+					}
+					if(start == end) {
+						return;
+					}
+					try {
+						if(dimensions > 0) {
+							DensePoint.parse(line, start, end, coordinates, 0, dimensions);
+						} else {
+							parsePoint(line, start, end, fields);
+						}
+					} catch(Exception e) {
+						malformed.add(line);
+						return;
+					}
+					writer.append(line, start, end);
+					writer.newLine();
+					written[0]++;
+				}
+			});
+		} finally {
+			writer.close();
+		}
+		malformed.report();
+		return written[0];
+	}
+
+	/**
+	  * Parses a "year,temperature" point from a part of a line, in place.
+	  */
+	private static void parsePoint(CharSequence line, int begin, int end, int[] fields)
+		throws IOException {
+		int comma = indexOf(line, ',', begin, end);
+		if(comma < 0 || indexOf(line, ',', comma + 1, end) >= 0) {
+			throw new IOException("Malformed point: " + line.subSequence(begin, end));
+		}
+		fields[0] = parseInt(line, begin, comma);
+		fields[1] = parseInt(line, comma + 1, end);
+	}
+
+	/**
+	  * Parses a decimal int with an optional sign and surrounding blanks from a part of a line, as
+	  * Integer.parseInt() does with the trimmed part but without copying it to a String.
+	  */
+	private static int parseInt(CharSequence line, int begin, int end)
+		throws IOException {
+		while(begin < end && line.charAt(begin) <= ' ') {
+			begin++;
+		}
+		while(end > begin && line.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		boolean negative = (begin < end && line.charAt(begin) == '-');
+		int i = (begin < end && (negative || line.charAt(begin) == '+') ? begin + 1 : begin);
+		if(i == end) {
+			throw new IOException("Malformed number: " + line.subSequence(begin, end));
+		}
+		long value = 0;
+		long limit = (negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE);
+		for(; i < end; i++) {
+			char c = line.charAt(i);
+			if(c < '0' || c > '9') {
+				throw new IOException("Malformed number: " + line.subSequence(begin, end));
+			}
+			value = value * 10 + (c - '0');
+			if(value > limit) {
+				throw new IOException("Number out of range: " + line.subSequence(begin, end));
+			}
+		}
+		return (int) (negative ? -value : value);
+	}
+
+	/**
+	  * Returns the index of the first occurrence of a character in a part of a line, -1 if there is none.
+	  */
+	private static int indexOf(CharSequence line, char c, int begin, int end) {
+		for(int i = begin; i < end; i++) {
+			if(line.charAt(i) == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	  * Writes the mapper partitions from the part files of the canopy assignment job in one parallel pass.
+	  * Each partition is a range of about the same size of the concatenated part files, cut at record boundaries,
+	  * and is parsed and written by one worker of a pool of ccimr.split.threads threads.
+	  *
+	  * @param inputPath Part file or folder of part files.
+	  * @param numberOfPartitions Number of partitions to write.
+	  * @param binary Whether to write binary partitions (PartitionFile) instead of text.
+	  * @param dimensions Number of coordinates of dense points, 0 for [year, temperature] points.
+	  * @return long Number of records written.
+	  */
+	public static long ingestData(String inputPath, int numberOfPartitions, final boolean binary, final int dimensions)
+		throws IOException {
+		if(numberOfPartitions <= 0) {
+			throw new IOException("Number of partitions cannot be less than or equal to 0.");
+		}
+		if(binary && dimensions > 0) {
+			throw new IOException("Binary partitions only hold [year, temperature] records.");
+		}
+
+		// Check if output folder exists
+		File dir = new File(SplitData.getOutputFolder());
+		if(dir.exists() && dir.isDirectory()) {
+			throw new IOException("Output folder \"" + dir + "\" already exists. Please specify an empty folder.");
+		}
+
+		List<File> inputs = listInputs(inputPath);
+		List<List<Segment>> ranges = partition(inputs, numberOfPartitions);
+		long totalBytes = 0;
+		for(File input : inputs) {
+			totalBytes += input.length();
+		}
+		dir.mkdir();
+
+		System.out.println("Input: " + inputs.size() + " part files, " + totalBytes + " bytes");
+
+		final MalformedRecords malformed = new MalformedRecords();
+		final SplitData.SplitProgress progress = new SplitData.SplitProgress(numberOfPartitions, totalBytes);
+		List<Callable<Long>> writers = new ArrayList<Callable<Long>>();
+		for(int i = 0; i < numberOfPartitions; i++) {
+			final List<Segment> segments = ranges.get(i);
+			final String outputPath = dir.getPath() + "/" + SplitData.getOutputFilePrefix() + i;
+			writers.add(new Callable<Long>() {
+				public Long call() throws IOException {
+					long records = (binary ? writeBinaryPartition(segments, outputPath, malformed)
+						: writeTextPartition(segments, outputPath, dimensions, malformed));
+					long bytes = 0;
+					for(Segment segment : segments) {
+						bytes += segment.end - segment.start;
+					}
+					progress.completed(bytes);
+					return records;
+				}
+			});
+		}
+
+		long records = 0;
+		for(Long count : SplitData.runAll(writers, SplitData.numThreads())) {
+			records += count;
+		}
+		malformed.report();
+		System.out.println(records + " records written to " + numberOfPartitions + " partitions in \"" + dir + "/\" folder");
+		return records;
+	}
+
+	/**
+	  * Parses the records of a range and writes them as "canopyCenter\tdataPoint" text lines.
+	  */
+	private static long writeTextPartition(List<Segment> segments, String outputPath, final int dimensions,
+		final MalformedRecords malformed)
+		throws IOException {
+		final BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath), READ_BUFFER_SIZE);
+		final int[] fields = new int[4];
+		final double[] coordinates = new double[Math.max(dimensions, 1)];
+		final long[] written = new long[1];
+		try {
+			readLines(segments, new LineHandler() {
+				public void line(CharSequence line) throws IOException {
+					int start = skipLeadingBlanks(line);
+					int end = trimmedLength(line);
+					if(start >= end) {
+						return;
+					}
+					CharSequence record = line.subSequence(start, end);
+					try {
+						if(dimensions > 0) {
+							int tab = indexOf(record, '\t', 0, record.length());
+							if(tab < 0) {
+								throw new IOException("Malformed record: " + record);
+							}
+							DensePoint.parse(record, 0, tab, coordinates, 0, dimensions);
+							DensePoint.parse(record, tab + 1, record.length(), coordinates, 0, dimensions);
+						} else {
+							PartitionFile.parseRecord(record, fields);
+						}
+					} catch(Exception e) {
+						malformed.add(line);
+						return;
+					}
+					writer.append(record);
+					writer.newLine();
+					written[0]++;
+				}
+			});
+		} finally {
+			writer.close();
+		}
+		return written[0];
+	}
+
+	/**
+	  * Parses the records of a range and writes them to a binary partition.
+	  */
+	private static long writeBinaryPartition(List<Segment> segments, String outputPath, final MalformedRecords malformed)
+		throws IOException {
+		final PartitionFile.Writer writer = new PartitionFile.Writer(outputPath);
+		final int[] fields = new int[4];
+		try {
+			readLines(segments, new LineHandler() {
+				public void line(CharSequence line) throws IOException {
+					int start = skipLeadingBlanks(line);
+					if(start >= trimmedLength(line)) {
+						return;
+					}
+					try {
+						PartitionFile.parseRecord(line.subSequence(start, line.length()), fields);
+					} catch(IOException e) {
+						malformed.add(line);
+						return;
+					}
+					writer.write(fields[0], fields[1], fields[2], fields[3]);
+				}
+			});
+		} finally {
+			writer.close();
+		}
+		return writer.getRecordCount();
+	}
+
+	/**
+	  * Parses a split size with an optional K or M suffix, as SplitData does.
+	  */
+	private static long parseSize(String sizeString) {
+		char unit = Character.toUpperCase(sizeString.charAt(sizeString.length() - 1));
+		if(unit == 'K' || unit == 'M') {
+			long size = Long.parseLong(sizeString.substring(0, sizeString.length() - 1));
+			return size * (unit == 'K' ? 1024 : 1024 * 1024);
+		}
+		return Long.parseLong(sizeString);
+	}
+
+	/**
+	  * Main function.
+	  *
+	  * @param args Arguments passed to main method.
+	  * args[0] is the mode, canopies or data.
+	  * In canopies mode, args[1] is the part file or folder of the canopy center job and args[2] the output file.
+	  * In data mode, args[1] is the part file or folder of the canopy assignment job, args[2] is the choice between
+	  * partitions of a fixed size (size) or a fixed number of partitions (file), args[3] the size (with an
+	  * optional K or M suffix) or number, args[4] (optional) the output folder, default output, and args[5]
+	  * (optional) the file prefix of the partitions, default input_.
+	  */
+	public static void main(String args[]) {
+		int dimensions = Integer.getInteger(DIMENSIONS_PROPERTY, 0);
+		try {
+			if(args.length == 3 && args[0].toLowerCase().equals("canopies")) {
+				long centers = ingestCanopies(args[1], args[2], dimensions);
+				System.out.println(centers + " canopy centers written to " + args[2]);
+			}
+			else if(args.length >= 4 && args[0].toLowerCase().equals("data")) {
+				if(args.length >= 5) {
+					SplitData.setOutputFolder(args[4]);
+					if(args.length >= 6)
+						SplitData.setOutputFilePrefix(args[5]);
+				}
+
+				int numberOfPartitions;
+				if(args[2].toLowerCase().equals("file")) {
+					numberOfPartitions = Integer.parseInt(args[3]);
+				}
+				else if(args[2].toLowerCase().equals("size")) {
+					long totalBytes = 0;
+					for(File input : listInputs(args[1])) {
+						totalBytes += input.length();
+					}
+					numberOfPartitions = (int) Math.max(1, (totalBytes + parseSize(args[3]) - 1) / parseSize(args[3]));
+				}
+				else {
+					throw new Exception("Bad argument: " + args[2] + ". Expected: 'file' or 'size'");
+				}
+				ingestData(args[1], numberOfPartitions, Boolean.getBoolean(BINARY_PROPERTY), dimensions);
+			}
+			else {
+				System.out.println("Usage: java Ingest canopies INPUT OUTPUT_FILE");
+				System.out.println("       java Ingest data INPUT size|file NUMBER_OR_SIZE_OF_PARTITIONS [OUTPUT_FOLDER] [FILE_PREFIX]");
+				System.exit(-1);
+			}
+		}
+		catch(Exception e) {
+			System.out.println("An exception has occurred. " + e);
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+}
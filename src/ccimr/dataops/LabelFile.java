@@ -0,0 +1,176 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.dataops;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+  * Output of the final labelling pass: the centroid every data point of a partition is assigned to, in the order
+  * of the records of the partition.
+  * A text label file has one "record\tyear,temperature\tlabel" line per point, followed by "\tdistance" if
+  * distances are written. A binary label file starts with a header holding a magic number, the format version,
+  * the flags and the number of records, followed by the records: four big-endian ints (record, year, temperature,
+  * label), and a fifth one for the distance if the DISTANCES flag is set.
+  * The record is the index of the point's record in the partition, counting from 0, so labels join back to the
+  * data; records the map task left out (their canopy center is unknown) are missing from the file.
+  * The label is the index of the centroid, -1 (with a distance of -1) for a point no centroid lies within T1 of.
+  * The distance is the complexDistance to the centroid, a whole number for whole coordinates.
+  */
+public class LabelFile {
+	/**
+	  * Magic number identifying a binary label file ("CCLB").
+	  */
+	public static final int MAGIC = 0x43434C42;
+
+	/**
+	  * Current version of the format.
+	  */
+	public static final int VERSION = 1;
+
+	/**
+	  * Flag set when the records hold distances.
+	  */
+	public static final int DISTANCES = 1;
+
+	/**
+	  * Size of the header in bytes: magic, version, flags and a long record count.
+	  */
+	public static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+
+	/**
+	  * Callback receiving the records of a label file in file order.
+	  */
+	public interface LabelVisitor {
+		void visit(int record, int year, int temperature, int label, int distance);
+	}
+
+	/**
+	  * Writes the labels of a partition. The file is written under a temporary name and renamed into place by
+	  * close(), so a partial file is never picked up.
+	  */
+	public static class Writer {
+		private File file, temporary;
+		private DataOutputStream out;
+		private boolean binary, distances;
+		private long recordCount;
+
+		/**
+		  * Creates (or replaces) a label file.
+		  *
+		  * @param filePath Path of the label file.
+		  * @param binary Whether to write the binary format rather than text.
+		  * @param distances Whether to write the distances.
+		  */
+		public Writer(String filePath, boolean binary, boolean distances)
+			throws IOException {
+			this.file = new File(filePath);
+			this.temporary = new File(filePath + ".tmp");
+			this.binary = binary;
+			this.distances = distances;
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16));
+			if(binary) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(distances ? DISTANCES : 0);
+				out.writeLong(0);
+			}
+			recordCount = 0;
+		}
+
+		/**
+		  * Appends the label of a point. The distance is ignored unless distances are written.
+		  */
+		public void write(int record, int year, int temperature, int label, int distance)
+			throws IOException {
+			if(binary) {
+				out.writeInt(record);
+				out.writeInt(year);
+				out.writeInt(temperature);
+				out.writeInt(label);
+				if(distances) {
+					out.writeInt(distance);
+				}
+			} else {
+				StringBuilder line = new StringBuilder(48);
+				line.append(record).append('\t').append(year).append(',').append(temperature).append('\t').append(label);
+				if(distances) {
+					line.append('\t').append(distance);
+				}
+				out.writeBytes(line.append('\n').toString());
+			}
+			recordCount++;
+		}
+
+		/**
+		  * Returns the number of records written so far.
+		  *
+		  * @return long Number of records.
+		  */
+		public long getRecordCount() {
+			return recordCount;
+		}
+
+		/**
+		  * Writes the final record count into the header of a binary file, closes the file and renames it into place.
+		  */
+		public void close()
+			throws IOException {
+			out.close();
+			if(binary) {
+				RandomAccessFile header = new RandomAccessFile(temporary, "rw");
+				try {
+					header.seek(12);
+					header.writeLong(recordCount);
+				} finally {
+					header.close();
+				}
+			}
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	  * Reads every record of a binary label file. Records without a distance are visited with a distance of -1.
+	  *
+	  * @param filePath Path to the binary label file.
+	  * @param visitor Callback receiving the records.
+	  * @return long Number of records read.
+	  */
+	public static long read(String filePath, LabelVisitor visitor)
+		throws IOException {
+		File file = new File(filePath);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			if(file.length() < HEADER_SIZE || in.readInt() != MAGIC) {
+				throw new IOException(filePath + " is not a binary label file.");
+			}
+			int version = in.readInt();
+			if(version != VERSION) {
+				throw new IOException("Unsupported label file version " + version + " in " + filePath);
+			}
+			boolean distances = (in.readInt() & DISTANCES) != 0;
+			long count = in.readLong();
+			if(file.length() != HEADER_SIZE + count * (distances ? 20 : 16)) {
+				throw new IOException("Truncated label file " + filePath + ": expected " + count + " records.");
+			}
+			for(long i = 0; i < count; i++) {
+				visitor.visit(in.readInt(), in.readInt(), in.readInt(), in.readInt(), (distances ? in.readInt() : -1));
+			}
+			return count;
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,315 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.dataops;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+  * Fixed-width binary format for mapper partitions.
+  * A partition file starts with a header holding a magic number, the format version and the number of records,
+  * followed by the records. Each record is four big-endian ints: the canopy center (year, temperature)
+  * and the data point (year, temperature), the same fields as a "canopyCenter\tdataPoint" text line.
+  */
+public class PartitionFile {
+	/**
+	  * Magic number identifying a binary partition ("CCMR").
+	  */
+	public static final int MAGIC = 0x43434D52;
+
+	/**
+	  * Current version of the format.
+	  */
+	public static final int VERSION = 1;
+
+	/**
+	  * Size of the header in bytes: magic, version and a long record count.
+	  */
+	public static final int HEADER_SIZE = 4 + 4 + 8;
+
+	/**
+	  * Size of a record in bytes.
+	  */
+	public static final int RECORD_SIZE = 4 * 4;
+
+	/**
+	  * Suffix of the binary sidecar cache kept next to a text partition.
+	  */
+	public static final String SIDECAR_SUFFIX = ".bin";
+
+	/**
+	  * Character ending each field of a text record, the end of the line ending the last one.
+	  */
+	private static final char[] RECORD_SEPARATORS = { ',', '\t', ',', '\n' };
+
+	/**
+	  * Number of records mapped into memory at a time while reading.
+	  */
+	private static final int RECORDS_PER_WINDOW = 1 << 24;
+
+	/**
+	  * Callback receiving the records of a partition in file order.
+	  */
+	public interface RecordVisitor {
+		void visit(int canopyYear, int canopyTemperature, int year, int temperature);
+	}
+
+	/**
+	  * Writes records to a new binary partition. The record count in the header is filled in by close().
+	  */
+	public static class Writer {
+		private RandomAccessFile file;
+		private FileChannel channel;
+		private ByteBuffer buffer;
+		private long recordCount;
+
+		/**
+		  * Creates (or truncates) a binary partition and writes a provisional header.
+		  *
+		  * @param filePath Path of the binary partition.
+		  */
+		public Writer(String filePath)
+			throws IOException {
+			file = new RandomAccessFile(filePath, "rw");
+			file.setLength(0);
+			channel = file.getChannel();
+			buffer = ByteBuffer.allocateDirect(RECORD_SIZE * 8192);
+			buffer.putInt(MAGIC).putInt(VERSION).putLong(0);
+			recordCount = 0;
+		}
+
+		/**
+		  * Appends a record.
+		  */
+		public void write(int canopyYear, int canopyTemperature, int year, int temperature)
+			throws IOException {
+			if(buffer.remaining() < RECORD_SIZE) {
+				flush();
+			}
+			buffer.putInt(canopyYear).putInt(canopyTemperature).putInt(year).putInt(temperature);
+			recordCount++;
+		}
+
+		/**
+		  * Returns the number of records written so far.
+		  *
+		  * @return long Number of records.
+		  */
+		public long getRecordCount() {
+			return recordCount;
+		}
+
+		/**
+		  * Flushes the buffered records, writes the final record count into the header and closes the file.
+		  */
+		public void close()
+			throws IOException {
+			flush();
+			ByteBuffer count = ByteBuffer.allocate(8);
+			count.putLong(recordCount).flip();
+			channel.write(count, 8);
+			channel.close();
+			file.close();
+		}
+
+		private void flush()
+			throws IOException {
+			buffer.flip();
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+
+	/**
+	  * Checks if a file is a binary partition by looking for the magic number.
+	  *
+	  * @param filePath Path to the file.
+	  * @return boolean true if the file starts with a binary partition header.
+	  */
+	public static boolean isBinary(String filePath)
+		throws IOException {
+		File file = new File(filePath);
+		if(file.length() < HEADER_SIZE) {
+			return false;
+		}
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			return in.readInt() == MAGIC;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	  * Reads and validates the header of a binary partition.
+	  *
+	  * @param filePath Path to the binary partition.
+	  * @return long Number of records in the partition.
+	  */
+	public static long recordCount(String filePath)
+		throws IOException {
+		File file = new File(filePath);
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			if(file.length() < HEADER_SIZE || in.readInt() != MAGIC) {
+				throw new IOException(filePath + " is not a binary partition.");
+			}
+			int version = in.readInt();
+			if(version != VERSION) {
+				throw new IOException("Unsupported partition version " + version + " in " + filePath);
+			}
+			long count = in.readLong();
+			if(file.length() != HEADER_SIZE + count * RECORD_SIZE) {
+				throw new IOException("Truncated partition " + filePath + ": expected " + count + " records.");
+			}
+			return count;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	  * Reads every record of a binary partition through a memory-mapped FileChannel.
+	  * The file is mapped in windows so partitions larger than 2 GB can be read.
+	  *
+	  * @param filePath Path to the binary partition.
+	  * @param visitor Callback receiving the records.
+	  * @return long Number of records read.
+	  */
+	public static long read(String filePath, RecordVisitor visitor)
+		throws IOException {
+		long count = recordCount(filePath);
+		RandomAccessFile file = new RandomAccessFile(filePath, "r");
+		FileChannel channel = file.getChannel();
+		try {
+			for(long first = 0; first < count; first += RECORDS_PER_WINDOW) {
+				long records = Math.min(RECORDS_PER_WINDOW, count - first);
+				MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY,
+					HEADER_SIZE + first * RECORD_SIZE, records * RECORD_SIZE);
+				IntBuffer ints = window.asIntBuffer();
+				for(int i = 0; i < records; i++) {
+					visitor.visit(ints.get(), ints.get(), ints.get(), ints.get());
+				}
+			}
+		} finally {
+			channel.close();
+			file.close();
+		}
+		return count;
+	}
+
+	/**
+	  * Converts a text partition of "canopyYear,canopyTemperature\tyear,temperature" lines into a binary partition.
+	  *
+	  * @param textFilePath Path to the text partition.
+	  * @param binaryFilePath Path of the binary partition to write.
+	  * @return long Number of records written.
+	  */
+	public static long convert(String textFilePath, String binaryFilePath)
+		throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(textFilePath));
+		Writer writer = new Writer(binaryFilePath);
+		int[] fields = new int[4];
+		String line;
+		try {
+			while((line = reader.readLine()) != null) {
+				if(line.length() == 0) {
+					continue;
+				}
+				parseRecord(line, fields);
+				writer.write(fields[0], fields[1], fields[2], fields[3]);
+			}
+		} finally {
+			reader.close();
+			writer.close();
+		}
+		return writer.getRecordCount();
+	}
+
+	/**
+	  * Parses a "canopyYear,canopyTemperature\tyear,temperature" line without creating substrings.
+	  * The fields must be separated by exactly ",", "\t" and "," in that order and fit in an int;
+	  * spaces and a trailing carriage return are ignored.
+	  *
+	  * @param line Line to parse.
+	  * @param fields Array of at least four ints receiving the fields in order.
+	  */
+	public static void parseRecord(CharSequence line, int[] fields)
+		throws IOException {
+		int field = 0;
+		long value = 0;
+		boolean negative = false, digits = false;
+		for(int i = 0; i <= line.length(); i++) {
+			char c = (i < line.length() ? line.charAt(i) : '\n');
+			if(c >= '0' && c <= '9') {
+				value = value * 10 + (c - '0');
+				if(value > (negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE)) {
+					throw new IOException("Value out of range in record: " + line);
+				}
+				digits = true;
+			} else if(c == '-' && !digits && !negative) {
+				negative = true;
+			} else if(c == ',' || c == '\t' || c == '\n') {
+				if(!digits || field == 4 || c != RECORD_SEPARATORS[field]) {
+					throw new IOException("Malformed record: " + line);
+				}
+				fields[field++] = (int) (negative ? -value : value);
+				value = 0;
+				negative = digits = false;
+			} else if(c != ' ' && c != '\r') {
+				throw new IOException("Malformed record: " + line);
+			}
+		}
+		if(field != 4) {
+			throw new IOException("Malformed record: " + line);
+		}
+	}
+
+	/**
+	  * Converts every text partition in a folder to the binary format, in place.
+	  * Each file is written to a temporary file first and renamed over the original.
+	  *
+	  * @param args args[0] is the folder, args[1] (optional) is the prefix of the files to convert, default input_.
+	  */
+	public static void main(String args[]) {
+		if(args.length < 1) {
+			System.out.println("Usage: java PartitionFile FOLDER [FILE_PREFIX]");
+			System.exit(-1);
+		}
+		String prefix = (args.length >= 2 ? args[1] : "input_");
+
+		try {
+			File[] files = new File(args[0]).listFiles();
+			if(files == null) {
+				throw new IOException("Cannot list folder " + args[0]);
+			}
+			for(File file : files) {
+				if(!file.isFile() || !file.getName().startsWith(prefix) || isBinary(file.getPath())) {
+					continue;
+				}
+				File temporary = new File(file.getPath() + ".tmp");
+				long records = convert(file.getPath(), temporary.getPath());
+				if(!temporary.renameTo(file)) {
+					throw new IOException("Cannot rename " + temporary + " to " + file);
+				}
+				System.out.println(file + ": " + records + " records");
+			}
+		}
+		catch(Exception e) {
+			System.out.println("An exception has occurred. " + e);
+			e.printStackTrace();
+		}
+	}
+}
@@ -11,6 +11,16 @@ import java.io.File;
 import java.io.RandomAccessFile;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
   * Class to split a Data Set containing newline delimited contents into a smaller number of files.
@@ -31,6 +41,35 @@ public class SplitData {
 	  */
 	private static String outputFilePrefix = "input_";
 
+	/**
+	  * System property giving the number of worker threads of the parallel splits, default: number of processors.
+	  */
+	public static final String THREADS_PROPERTY = "ccimr.split.threads";
+
+	/**
+	  * Size of the buffer used to scan for record boundaries.
+	  */
+	private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	  * Accessors for the output folder and file prefix, shared with Ingest.
+	  */
+	static String getOutputFolder() {
+		return outputFolder;
+	}
+
+	static void setOutputFolder(String folder) {
+		outputFolder = folder;
+	}
+
+	static String getOutputFilePrefix() {
+		return outputFilePrefix;
+	}
+
+	static void setOutputFilePrefix(String prefix) {
+		outputFilePrefix = prefix;
+	}
+
 	/**
 	  * Splits input file into a fixed number of smaller files. Executes serially.
 	  * The method checks if the output directory exists. If it does, an IOException is thrown.
@@ -105,6 +144,180 @@ public class SplitData {
 		System.out.println(numberOfFileSplits + " files created in \"" + outputFolder +"/\" folder");
 	}
 
+	/**
+	  * Splits input file into a fixed number of files of about the same size in bytes. Executes in parallel.
+	  * Unlike fixedNumFilesSplit(String, long), the lines are not counted: the split boundaries are placed at even
+	  * byte offsets and moved forward to the start of the next record, so the input is read only once.
+	  * Each range is then copied to its output file with FileChannel.transferTo() on a pool of worker threads.
+	  * An IOException is thrown if a split would be empty, which happens when the file has too few lines.
+	  *
+	  * @param filePath Path to the input file to be split.
+	  * @param numberOfFileSplits Number of output file splits required.
+	  * @param numThreads Number of worker threads copying the splits.
+	  */
+	public static void parallelFixedNumFilesSplit(String filePath, int numberOfFileSplits, int numThreads)
+		throws IOException {
+		// Check if number of file splits is a natural number
+		if(numberOfFileSplits <= 0) {
+			throw new IOException("Number of file splits cannot be less than or equal to 0.");
+		}
+
+		// Check if output folder exists
+		File dir = new File(outputFolder);
+		if(dir.exists() && dir.isDirectory()) {
+			throw new IOException("Output folder \"" + outputFolder + "\" already exists. Please specify an empty folder.");
+		}
+
+		// Place the split boundaries at even byte offsets, moved to the start of the next record
+		final long filesize = new File(filePath).length();
+		final long[] boundaries = new long[numberOfFileSplits + 1];
+		RandomAccessFile input = new RandomAccessFile(filePath, "r");
+		try {
+			FileChannel channel = input.getChannel();
+			for(int i = 1; i < numberOfFileSplits; i++) {
+				long target = filesize / numberOfFileSplits * i + filesize % numberOfFileSplits * i / numberOfFileSplits;
+				boundaries[i] = Math.max(boundaries[i - 1], nextRecordStart(channel, target - 1, filesize));
+			}
+		} finally {
+			input.close();
+		}
+		boundaries[numberOfFileSplits] = filesize;
+		for(int i = 0; i < numberOfFileSplits; i++) {
+			if(boundaries[i] == boundaries[i + 1]) {
+				throw new IOException("Number of splits given is greater than the number of records that can be split evenly");
+			}
+		}
+		dir.mkdir();
+
+		System.out.println("File size: " + filesize);
+
+		// Copy every range on the worker pool
+		final String inputPath = filePath;
+		final SplitProgress progress = new SplitProgress(numberOfFileSplits, filesize);
+		List<Callable<Long>> copies = new ArrayList<Callable<Long>>();
+		for(int i = 0; i < numberOfFileSplits; i++) {
+			final int fileNumber = i;
+			copies.add(new Callable<Long>() {
+				public Long call() throws IOException {
+					long copied = copyRange(inputPath, boundaries[fileNumber], boundaries[fileNumber + 1],
+						outputFolder + "/" + outputFilePrefix + fileNumber);
+					progress.completed(copied);
+					return copied;
+				}
+			});
+		}
+		runAll(copies, numThreads);
+
+		// Display completion of splitting
+		System.out.println("File split complete.");
+		System.out.println(numberOfFileSplits + " files created in \"" + outputFolder +"/\" folder");
+	}
+
+	/**
+	  * Finds the start of the first record beginning after a position, scanning with a buffer.
+	  *
+	  * @param channel Channel of the input file.
+	  * @param position Position to scan from. The record starts after the first newline at or after this position.
+	  * @param filesize Size of the input file.
+	  * @return long Offset of the record start, or filesize if there is no newline after position.
+	  */
+	static long nextRecordStart(FileChannel channel, long position, long filesize)
+		throws IOException {
+		if(position < 0) {
+			return 0;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+		while(position < filesize) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if(read <= 0) {
+				break;
+			}
+			for(int i = 0; i < read; i++) {
+				if(buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return filesize;
+	}
+
+	/**
+	  * Copies a byte range of the input file to a new file with FileChannel.transferTo(), which lets the
+	  * operating system move the data without copying it through the Java heap.
+	  *
+	  * @param filePath Path to the input file.
+	  * @param start Offset of the first byte to copy.
+	  * @param end Offset after the last byte to copy.
+	  * @param outputPath Path of the file to create.
+	  * @return long Number of bytes copied.
+	  */
+	static long copyRange(String filePath, long start, long end, String outputPath)
+		throws IOException {
+		RandomAccessFile input = new RandomAccessFile(filePath, "r");
+		FileOutputStream output = new FileOutputStream(outputPath);
+		try {
+			FileChannel inputChannel = input.getChannel();
+			FileChannel outputChannel = output.getChannel();
+			long position = start;
+			while(position < end) {
+				long transferred = inputChannel.transferTo(position, end - position, outputChannel);
+				if(transferred <= 0) {
+					throw new IOException("Unexpected end of " + filePath + " at byte " + position);
+				}
+				position += transferred;
+			}
+			return end - start;
+		} finally {
+			output.close();
+			input.close();
+		}
+	}
+
+	/**
+	  * Runs tasks on a fixed pool of worker threads and waits for all of them.
+	  * The first failure is rethrown as an IOException once every task has finished.
+	  *
+	  * @param tasks Tasks to run.
+	  * @param numThreads Number of worker threads.
+	  * @return List<Long> Results of the tasks, in order.
+	  */
+	static List<Long> runAll(List<Callable<Long>> tasks, int numThreads)
+		throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(numThreads, tasks.size())));
+		try {
+			List<Long> results = new ArrayList<Long>();
+			IOException failure = null;
+			for(Future<Long> future : pool.invokeAll(tasks)) {
+				try {
+					results.add(future.get());
+				} catch(ExecutionException e) {
+					if(failure == null) {
+						failure = (e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause()));
+					}
+				}
+			}
+			if(failure != null) {
+				throw failure;
+			}
+			return results;
+		} catch(InterruptedException e) {
+			throw new IOException("Interrupted while splitting", e);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	  * Returns the number of worker threads for the parallel splits, from the ccimr.split.threads system property.
+	  *
+	  * @return int Number of threads.
+	  */
+	static int numThreads() {
+		return Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+	}
+
 	/**
 	  * Splits input file into a number of files each of a given size. Executes in parallel.
 	  * The method checks if the size has a valid trailing character - K or M.
@@ -140,10 +353,12 @@ public class SplitData {
 
 	/**
 	  * Splits input file into a number of files each of a given size. Executes in parallel.
-	  * The method finds the size of the file in bytes, then finds the expected number of output files using the size of each file given,
-	  * It spawns an equal number of threads to find their respective start and end bytes in the input file.
-	  * Each thread writes the content it reads to a separate output file.
-	  * The start and end bytes are moved to position them to the next newline character to write a complete record.
+	  * The method finds the size of the file in bytes, then finds the expected number of output files using the size of each file given.
+	  * The boundaries between splits are placed every size bytes and moved forward to the start of the next record,
+	  * scanning with a buffer, so every output file holds complete records.
+	  * The ranges are copied with FileChannel.transferTo() on a fixed pool of worker threads, so neither the number
+	  * of threads nor the memory used grows with the number or size of the splits. The method waits for all copies
+	  * and reports progress and throughput. Ranges that hold no record start (a record longer than size) are skipped.
 	  *
 	  * @param filePath Path to the input file to be split.
 	  * @param size Size of each split.
@@ -159,93 +374,6 @@ public class SplitData {
 		File file = new File(filePath);
 		final long filesize = file.length();
 
-		// Inner class to run threads
-		class FixedSizeSplitter implements Runnable {
-			String filePath;
-			private long threadNum;
-			private long size;
-
-			FixedSizeSplitter(String path, long threadNumber, long sizeOfSplit) {
-				filePath = path;
-				threadNum = threadNumber;
-				size = sizeOfSplit;
-			}
-			@Override
-			public void run() {
-				// Starting byte offset in input file for this thread
-				long start = threadNum * size;
-
-				// Ending byte offset in input file for this thread
-				long end = start + size;
-				int b;
-
-				try {
-					// Open the input file in random access mode
-					RandomAccessFile file = new RandomAccessFile(filePath, "r");
-
-					// Seek to the starting byte for this thread
-					file.seek(start);
-
-					try {
-						// Find actual start byte (beginning of a new record)
-						if(start != 0) {
-							// Find the next newline
-							while((b = file.read()) != '\n') {
-								start = start + 1;
-							}
-							// Skip the newline character, next character is the start of the new record
-							start = start + 1;
-						}
-
-						// Check if start is beyond the file's size. If so, skip this block
-						if(start >= filesize) return;
-
-						// Seek to ending byte in the input file for this thread
-						file.seek(end);
-
-						// Find the end of the current record, that is, the next newline character
-						while((b = file.read()) != '\n') {
-							// Check if end is beyond the file's size. If so, break out of the loop
-							if(end >= filesize) {
-								end = filesize;
-								break;
-							}
-							// Move the pointer one byte forward to include the newline character
-							end = end + 1;
-						}
-
-						// Check if start is beyond end. If so, return
-						if(start > end) return;
-
-						// Allocate buffer, set file pointer to start
-						byte[] bytes = new byte[(int)(end - start)];
-						file.seek(start);
-
-						// Read the set number of bytes
-						file.read(bytes);
-
-						// Write to output file
-						FileOutputStream outputStream = new FileOutputStream(outputFolder 
-							+ "/" + outputFilePrefix + threadNum);
-						outputStream.write(bytes);
-
-						// Close the file, flush the contents
-						outputStream.close();
-
-					}
-					catch (Exception except) {
-						except.printStackTrace();
-					}
-
-					// Close random access file
-					file.close();
-				}
-				catch(Exception e) {
-					e.printStackTrace();
-				}
-			}
-		}
-
 		// Check if output folder exists
 		File dir = new File(outputFolder);
 		if(dir.exists() && dir.isDirectory()) {
@@ -260,10 +388,74 @@ public class SplitData {
 		System.out.println("File size: " + filesize);
 		System.out.println("Expected number of splits of size " + size + " bytes : " + parts);
 
-		// Invoke threads to split file
-		for(long i = 0; i < parts; i++) {
-			Thread thread = new Thread(new FixedSizeSplitter(filePath, i, size));
-			thread.start();
+		// Find the record boundaries, dropping empty ranges
+		List<Long> boundaries = new ArrayList<Long>();
+		boundaries.add(0L);
+		RandomAccessFile input = new RandomAccessFile(filePath, "r");
+		try {
+			FileChannel channel = input.getChannel();
+			for(long i = 1; i <= parts; i++) {
+				long boundary = (i == parts ? filesize : nextRecordStart(channel, i * size - 1, filesize));
+				if(boundary > boundaries.get(boundaries.size() - 1)) {
+					boundaries.add(boundary);
+				}
+			}
+		} finally {
+			input.close();
+		}
+
+		// Copy every range on the worker pool
+		final String inputPath = filePath;
+		final SplitProgress progress = new SplitProgress(boundaries.size() - 1, filesize);
+		List<Callable<Long>> copies = new ArrayList<Callable<Long>>();
+		for(int i = 0; i + 1 < boundaries.size(); i++) {
+			final int fileNumber = i;
+			final long start = boundaries.get(i), end = boundaries.get(i + 1);
+			copies.add(new Callable<Long>() {
+				public Long call() throws IOException {
+					long copied = copyRange(inputPath, start, end, outputFolder + "/" + outputFilePrefix + fileNumber);
+					progress.completed(copied);
+					return copied;
+				}
+			});
+		}
+		runAll(copies, numThreads());
+
+		// Display completion of splitting
+		System.out.println("File split complete.");
+		System.out.println(copies.size() + " files created in \"" + outputFolder +"/\" folder");
+	}
+
+	/**
+	  * Counts the splits copied so far and prints progress about every 5%, with the throughput since the start.
+	  */
+	static class SplitProgress {
+		private final int totalSplits;
+		private final long totalBytes;
+		private final long startTime;
+		private int completedSplits;
+		private long completedBytes;
+
+		SplitProgress(int totalSplits, long totalBytes) {
+			this.totalSplits = totalSplits;
+			this.totalBytes = totalBytes;
+			startTime = System.currentTimeMillis();
+		}
+
+		/**
+		  * Records a copied split and prints progress if another 5% of the splits are done.
+		  *
+		  * @param bytes Size of the split.
+		  */
+		synchronized void completed(long bytes) {
+			completedSplits++;
+			completedBytes += bytes;
+			int step = Math.max(1, totalSplits / 20);
+			if(completedSplits % step == 0 || completedSplits == totalSplits) {
+				double seconds = Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+				System.out.println(String.format("%d/%d splits, %d/%d MB, %.1f MB/s", completedSplits, totalSplits,
+					completedBytes >> 20, totalBytes >> 20, completedBytes / seconds / (1 << 20)));
+			}
 		}
 	}
 
@@ -272,8 +464,9 @@ public class SplitData {
 	  *
 	  * @param args Arguments passed to main method. 
 	  * args[0] is the input file. 
-	  * args[1] is the choice between fixed file sizes or fixed number of files.
-	  * args[2] is the number of splits if args[1] was file and size of each split in bytes if args[1] was size.
+	  * args[1] is the choice between fixed file sizes (size), fixed number of files (file) or a fixed number of
+	  * files of even size, split in parallel (pfile).
+	  * args[2] is the number of splits if args[1] was file or pfile and size of each split in bytes if args[1] was size.
 	  * args[3] (optional) is the output folder, default value is output. 
 	  * args[4] (optional) is the file prefix of the output files default value is input_.
 	  */
@@ -281,7 +474,7 @@ public class SplitData {
 		// Check number of arguments
 		if(args.length < 3) {
 			System.err.println("Insufficient arguments given.");
-			System.out.println("Usage: java SplitData INPUT_FILE size|file NUMBER_OR_SIZE_OF_SPLITS [OUTPUT_FOLDER] [FILE_PREFIX]");
+			System.out.println("Usage: java SplitData INPUT_FILE size|file|pfile NUMBER_OR_SIZE_OF_SPLITS [OUTPUT_FOLDER] [FILE_PREFIX]");
 			System.exit(-1);
 		}
 
@@ -297,6 +490,9 @@ public class SplitData {
 			if(args[1].toLowerCase().equals("file")) {
 				fixedNumFilesSplit(args[0], Long.parseLong(args[2]));
 			}
+			else if(args[1].toLowerCase().equals("pfile")) {
+				parallelFixedNumFilesSplit(args[0], Integer.parseInt(args[2]), numThreads());
+			}
 			else if (args[1].toLowerCase().equals("size")) {
 				try {
 					fixedSizeSplit(args[0], Long.parseLong(args[2]));
@@ -308,7 +504,7 @@ public class SplitData {
 				
 			}
 			else {
-				throw new Exception("Bad argument: " + args[1] +". Expected: 'file' or 'size'");
+				throw new Exception("Bad argument: " + args[1] +". Expected: 'file', 'pfile' or 'size'");
 			}
 		}
 		catch(Exception e) {
@@ -0,0 +1,351 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.local;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import cgl.imr.base.Combiner;
+import cgl.imr.base.Key;
+import cgl.imr.base.MapOutputCollector;
+import cgl.imr.base.MapTask;
+import cgl.imr.base.ReduceOutputCollector;
+import cgl.imr.base.ReduceTask;
+import cgl.imr.base.SerializationException;
+import cgl.imr.base.TwisterException;
+import cgl.imr.base.Value;
+import cgl.imr.base.impl.JobConf;
+import cgl.imr.base.impl.MapperConf;
+import cgl.imr.data.file.FileData;
+
+import ccimr.clustering.IterationDriver;
+
+/**
+  * In-process stand-in for the Twister runtime.
+  * Runs long-lived map tasks over local partition files on a thread pool, groups their output by key,
+  * reduces each key on one of a fixed set of reduce tasks and hands the reduce output to a single combiner,
+  * the way a Twister deployment does, but without a broker or the twister.sh file staging.
+  * Meant for profiling and regression-testing the clustering tasks on one machine.
+  */
+public class LocalTwisterDriver implements IterationDriver {
+
+	private JobConf jobConf;
+	private Class<? extends MapTask> mapperClass;
+	private ExecutorService executor;
+	private List<MapTask> mapTasks;
+	private ReduceTask[] reduceTasks;
+	private Combiner combiner;
+
+	/**
+	  * Creates the driver and configures one reduce task per reducer and the combiner.
+	  *
+	  * @param jobConf Job configuration passed to every task.
+	  * @param mapperClass Class of the map tasks.
+	  * @param reducerClass Class of the reduce tasks.
+	  * @param combinerClass Class of the combiner.
+	  * @param numReducers Number of reduce tasks.
+	  * @param numThreads Number of threads running the map and reduce tasks.
+	  */
+	public LocalTwisterDriver(JobConf jobConf, Class<? extends MapTask> mapperClass,
+			Class<? extends ReduceTask> reducerClass, Class<? extends Combiner> combinerClass,
+			int numReducers, int numThreads) throws TwisterException {
+		this.jobConf = jobConf;
+		this.mapperClass = mapperClass;
+		executor = Executors.newFixedThreadPool(numThreads);
+		mapTasks = new ArrayList<MapTask>();
+
+		reduceTasks = new ReduceTask[numReducers];
+		for(int i = 0; i < numReducers; i++) {
+			reduceTasks[i] = newInstance(reducerClass);
+			// ReducerConf only carries the task number, which the clustering reducer does not use
+			reduceTasks[i].configure(jobConf, null);
+		}
+		combiner = newInstance(combinerClass);
+		combiner.configure(jobConf);
+	}
+
+	/**
+	  * Creates a task through its public no-argument constructor, as the Twister runtime does.
+	  * An exception thrown by the constructor is rethrown as the cause of the TwisterException.
+	  *
+	  * @param taskClass Class of the task.
+	  * @return T The new task.
+	  */
+	private static <T> T newInstance(Class<T> taskClass)
+	throws TwisterException {
+		try {
+			return taskClass.getDeclaredConstructor().newInstance();
+		} catch (InvocationTargetException e) {
+			if(e.getCause() instanceof TwisterException) {
+				throw (TwisterException) e.getCause();
+			}
+			throw new TwisterException(e.getCause());
+		} catch (ReflectiveOperationException e) {
+			throw new TwisterException(e);
+		}
+	}
+
+	/**
+	  * Creates and configures one map task per partition, in parallel.
+	  * The partitions are either all regular files in a directory, or the files listed in a partition file,
+	  * one per line, where the path is the last comma separated field (as in a Twister partition file).
+	  *
+	  * @param partitionFile Directory of partitions or partition file.
+	  * @param numMapTasks Expected number of map tasks, which must match the number of partitions.
+	  */
+	public void configureMaps(String partitionFile, int numMapTasks)
+	throws TwisterException {
+		final List<String> partitions;
+		try {
+			partitions = listPartitions(partitionFile);
+		} catch (IOException e) {
+			throw new TwisterException(e);
+		}
+		if(partitions.size() != numMapTasks) {
+			throw new TwisterException("Number of map tasks (" + numMapTasks
+					+ ") does not match the number of partitions (" + partitions.size() + ")");
+		}
+
+		List<Callable<MapTask>> configureTasks = new ArrayList<Callable<MapTask>>();
+		for(int i = 0; i < partitions.size(); i++) {
+			final int mapTaskNo = i;
+			configureTasks.add(new Callable<MapTask>() {
+				public MapTask call() throws Exception {
+					MapTask mapTask = newInstance(mapperClass);
+					mapTask.configure(jobConf, new MapperConf(mapTaskNo, new FileData(partitions.get(mapTaskNo))));
+					return mapTask;
+				}
+			});
+		}
+		for(Future<MapTask> result : invokeAll(configureTasks)) {
+			mapTasks.add(await(result));
+		}
+	}
+
+	/**
+	  * Runs one iteration: every map task receives its own copy of the value, decoded from the value's serialized
+	  * form, the map output is grouped by key, each key is reduced on reduce task (hashCode mod number of reducers)
+	  * and the reduce output is combined. Like the broadcast, every key and value passed from one phase to the next
+	  * goes through getBytes() and fromBytes() of a new instance, so their wire formats are exercised as in a
+	  * deployment. Returns once the combiner holds the result.
+	  *
+	  * @param value Value broadcast to every map task.
+	  */
+	public void runMapReduceBCast(Value value)
+	throws TwisterException {
+		final Class<? extends Value> broadcastClass = value.getClass();
+		final byte[] broadcastBytes;
+		try {
+			broadcastBytes = value.getBytes();
+		} catch (SerializationException e) {
+			throw new TwisterException(e);
+		}
+
+		// Map phase
+		List<Callable<List<Object[]>>> mapCalls = new ArrayList<Callable<List<Object[]>>>();
+		for(final MapTask mapTask : mapTasks) {
+			mapCalls.add(new Callable<List<Object[]>>() {
+				public List<Object[]> call() throws Exception {
+					final List<Object[]> output = new ArrayList<Object[]>();
+					mapTask.map(new MapOutputCollector() {
+						public void collect(Key key, Value value) {
+							output.add(new Object[] { key, value });
+						}
+					}, null, decode(broadcastClass, broadcastBytes.clone()));
+					for(Object[] pair : output) {
+						pair[0] = copyKey((Key) pair[0]);
+						pair[1] = copyValue((Value) pair[1]);
+					}
+					return output;
+				}
+			});
+		}
+
+		// Shuffle: group the map output by key, keeping the map task order within a key
+		final Map<Key, List<Value>> keyValues = new LinkedHashMap<Key, List<Value>>();
+		for(Future<List<Object[]>> result : invokeAll(mapCalls)) {
+			for(Object[] pair : await(result)) {
+				List<Value> values = keyValues.get(pair[0]);
+				if(values == null) {
+					values = new ArrayList<Value>();
+					keyValues.put((Key) pair[0], values);
+				}
+				values.add((Value) pair[1]);
+			}
+		}
+
+		// Reduce phase, one call per reduce task handling its keys in turn
+		final Map<Key, Value> reduceOutput = new HashMap<Key, Value>();
+		final ReduceOutputCollector collector = new ReduceOutputCollector() {
+			public void collect(Key key, Value value) {
+				synchronized(reduceOutput) {
+					reduceOutput.put(key, value);
+				}
+			}
+		};
+		List<Callable<Void>> reduceCalls = new ArrayList<Callable<Void>>();
+		for(int i = 0; i < reduceTasks.length; i++) {
+			final int reduceTaskNo = i;
+			reduceCalls.add(new Callable<Void>() {
+				public Void call() throws Exception {
+					for(Map.Entry<Key, List<Value>> entry : keyValues.entrySet()) {
+						if(Math.abs(entry.getKey().hashCode() % reduceTasks.length) == reduceTaskNo) {
+							reduceTasks[reduceTaskNo].reduce(collector, entry.getKey(), entry.getValue());
+						}
+					}
+					return null;
+				}
+			});
+		}
+		for(Future<Void> result : invokeAll(reduceCalls)) {
+			await(result);
+		}
+
+		// Combine
+		Map<Key, Value> combineInput = new HashMap<Key, Value>();
+		for(Map.Entry<Key, Value> entry : reduceOutput.entrySet()) {
+			combineInput.put(copyKey(entry.getKey()), copyValue(entry.getValue()));
+		}
+		combiner.combine(combineInput);
+	}
+
+	/**
+	  * Creates a value of a class from its serialized form, as the Twister runtime does on the receiving side.
+	  *
+	  * @param valueClass Class of the value.
+	  * @param bytes Bytes returned by getBytes().
+	  * @return Value The new value.
+	  */
+	private static Value decode(Class<? extends Value> valueClass, byte[] bytes)
+	throws TwisterException {
+		Value value = newInstance(valueClass);
+		try {
+			value.fromBytes(bytes);
+		} catch (SerializationException e) {
+			throw new TwisterException(e);
+		}
+		return value;
+	}
+
+	/**
+	  * Copies a value through its serialized form.
+	  */
+	private static Value copyValue(Value value)
+	throws TwisterException {
+		try {
+			return decode(value.getClass(), value.getBytes());
+		} catch (SerializationException e) {
+			throw new TwisterException(e);
+		}
+	}
+
+	/**
+	  * Copies a key through its serialized form.
+	  */
+	private static Key copyKey(Key key)
+	throws TwisterException {
+		Key copy = newInstance(key.getClass());
+		try {
+			copy.fromBytes(key.getBytes());
+		} catch (SerializationException e) {
+			throw new TwisterException(e);
+		}
+		return copy;
+	}
+
+	public Combiner getCurrentCombiner() {
+		return combiner;
+	}
+
+	/**
+	  * Closes every task and stops the thread pool.
+	  */
+	public void close()
+	throws TwisterException {
+		for(MapTask mapTask : mapTasks) {
+			mapTask.close();
+		}
+		for(ReduceTask reduceTask : reduceTasks) {
+			reduceTask.close();
+		}
+		combiner.close();
+		executor.shutdown();
+	}
+
+	/**
+	  * Lists the partition files given to configureMaps().
+	  */
+	private static List<String> listPartitions(String partitionFile)
+	throws IOException {
+		List<String> partitions = new ArrayList<String>();
+		File file = new File(partitionFile);
+
+		if(file.isDirectory()) {
+			File[] files = file.listFiles();
+			Arrays.sort(files);
+			for(File partition : files) {
+				// Skip the binary sidecars and temporary files written by the map tasks
+				String name = partition.getName();
+				if(partition.isFile() && !name.endsWith(".bin") && !name.endsWith(".tmp")) {
+					partitions.add(partition.getPath());
+				}
+			}
+			return partitions;
+		}
+
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		String line;
+		try {
+			while((line = reader.readLine()) != null) {
+				line = line.trim();
+				if(line.length() > 0) {
+					partitions.add(line.substring(line.lastIndexOf(',') + 1).trim());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return partitions;
+	}
+
+	private <T> List<Future<T>> invokeAll(List<Callable<T>> calls)
+	throws TwisterException {
+		try {
+			return executor.invokeAll(calls);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TwisterException(e);
+		}
+	}
+
+	private static <T> T await(Future<T> result)
+	throws TwisterException {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TwisterException(e);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof TwisterException) {
+				throw (TwisterException) e.getCause();
+			}
+			throw new TwisterException(e.getCause());
+		}
+	}
+}
@@ -0,0 +1,252 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.types;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import java.util.Arrays;
+
+import cgl.imr.base.Value;
+import cgl.imr.base.SerializationException;
+
+import ccimr.types.DataPoint;
+import ccimr.types.DataPointVector;
+
+/**
+  * Broadcast of the k-Means Centroids for one iteration, either in full or as the centroids that moved
+  * since an earlier broadcast.
+  * A delta holds the indices of the changed centroids and their new positions, and can only be applied to
+  * the centroids of its base iteration.
+  * A broadcast can also mark its iteration as sampled (mini-batch), in which map tasks only assign a random
+  * sample of their points, or carry the converged centroids for the final labelling pass, in which map tasks
+  * write the label of each of their points instead of assigning them.
+  */
+public class CentroidDelta implements Value {
+
+	/**
+	  * Size of the fixed header: iteration, base iteration, flags, number of centroids and number of changes.
+	  */
+	private static final int HEADER_SIZE = 8 + 8 + 4 + 4 + 4;
+
+	/**
+	  * Flag set on the broadcast of a mini-batch iteration.
+	  */
+	private static final int SAMPLED = 1;
+
+	/**
+	  * Flag set on the broadcast of the final labelling pass.
+	  */
+	private static final int LABEL = 2;
+
+	/**
+	  * Iteration this broadcast is for.
+	  */
+	private long iteration;
+
+	/**
+	  * Iteration whose centroids the delta applies to, -1 for a full broadcast.
+	  */
+	private long baseIteration;
+
+	/**
+	  * Combination of the flags above.
+	  */
+	private int flags;
+
+	/**
+	  * Total number of centroids (k).
+	  */
+	private int numCentroids;
+
+	/**
+	  * Indices of the changed centroids, in increasing order, and their new positions in the same order.
+	  * A full broadcast lists every centroid.
+	  */
+	private int[] indices;
+	private DataPointVector centroids;
+
+	/**
+	  * Default Constructor, to be followed by fromBytes().
+	  */
+	public CentroidDelta() {
+		indices = new int[0];
+		centroids = new DataPointVector();
+	}
+
+	/**
+	  * Creates a full broadcast of all centroids.
+	  *
+	  * @param iteration Iteration the broadcast is for.
+	  * @param centroids All k-Means Centroids.
+	  * @return CentroidDelta The full broadcast.
+	  */
+	public static CentroidDelta full(long iteration, DataPointVector centroids) {
+		CentroidDelta delta = new CentroidDelta();
+		delta.iteration = iteration;
+		delta.baseIteration = -1;
+		delta.numCentroids = centroids.size();
+		delta.indices = new int[centroids.size()];
+		for(int i = 0; i < delta.indices.length; i++) {
+			delta.indices[i] = i;
+		}
+		delta.centroids = new DataPointVector(centroids);
+		return delta;
+	}
+
+	/**
+	  * Creates a delta holding the centroids whose complexDistance between previous and current exceeds the tolerance.
+	  *
+	  * @param iteration Iteration the broadcast is for.
+	  * @param baseIteration Iteration of the previous centroids, as held by the receivers.
+	  * @param previous Centroids held by the receivers.
+	  * @param current New centroids, same size as previous.
+	  * @param tolerance Movement up to which a centroid is not rebroadcast.
+	  * @return CentroidDelta The delta.
+	  */
+	public static CentroidDelta diff(long iteration, long baseIteration, DataPointVector previous,
+			DataPointVector current, double tolerance) {
+		if(previous.size() != current.size()) {
+			throw new IllegalArgumentException("Size mismatch: " + previous.size() + " != " + current.size());
+		}
+		CentroidDelta delta = new CentroidDelta();
+		delta.iteration = iteration;
+		delta.baseIteration = baseIteration;
+		delta.numCentroids = current.size();
+
+		int[] changed = new int[current.size()];
+		int length = 0;
+		for(int i = 0; i < current.size(); i++) {
+			double distance = DataPoint.complexDistance(previous.getYear(i), previous.getTemperature(i),
+					current.getYear(i), current.getTemperature(i));
+			if(distance > tolerance) {
+				changed[length++] = i;
+				delta.centroids.add(current.getYear(i), current.getTemperature(i), current.getCount(i));
+			}
+		}
+		delta.indices = Arrays.copyOf(changed, length);
+		return delta;
+	}
+
+	/**
+	  * Applies this broadcast to a copy of the centroids of its base iteration.
+	  *
+	  * @param previous Centroids of the base iteration, ignored for a full broadcast.
+	  * @return DataPointVector The centroids for this iteration.
+	  */
+	public DataPointVector applyTo(DataPointVector previous) {
+		DataPointVector result = (isFull() ? new DataPointVector(numCentroids) : new DataPointVector(previous));
+		for(int i = 0; i < indices.length; i++) {
+			result.set(indices[i], centroids.getYear(i), centroids.getTemperature(i), centroids.getCount(i));
+		}
+		return result;
+	}
+
+	public byte[] getBytes()
+	throws SerializationException {
+		byte[] centroidBytes = centroids.getBytes();
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + indices.length * 4 + centroidBytes.length);
+		buffer.putLong(iteration).putLong(baseIteration).putInt(flags).putInt(numCentroids).putInt(indices.length);
+		buffer.asIntBuffer().put(indices);
+		buffer.position(buffer.position() + indices.length * 4);
+		buffer.put(centroidBytes);
+		return buffer.array();
+	}
+
+	public void fromBytes(byte[] bytes)
+	throws SerializationException {
+		if(bytes.length < HEADER_SIZE) {
+			throw new SerializationException("Invalid CentroidDelta length: " + bytes.length + " bytes.");
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		iteration = buffer.getLong();
+		baseIteration = buffer.getLong();
+		flags = buffer.getInt();
+		numCentroids = buffer.getInt();
+		int length = buffer.getInt();
+		if(length < 0 || length > numCentroids || bytes.length < HEADER_SIZE + length * 4) {
+			throw new SerializationException("Invalid CentroidDelta: " + length + " changes of " + numCentroids);
+		}
+
+		indices = new int[length];
+		IntBuffer intBuffer = buffer.asIntBuffer();
+		intBuffer.get(indices);
+		buffer.position(buffer.position() + length * 4);
+
+		byte[] centroidBytes = new byte[buffer.remaining()];
+		buffer.get(centroidBytes);
+		centroids = new DataPointVector();
+		centroids.fromBytes(centroidBytes);
+		if(centroids.size() != length) {
+			throw new SerializationException("Invalid CentroidDelta: " + centroids.size() + " centroids for " + length + " changes");
+		}
+	}
+
+	public boolean isFull() {
+		return baseIteration < 0;
+	}
+
+	/**
+	  * Returns whether map tasks assign only a random sample of their points in this iteration.
+	  */
+	public boolean isSampled() {
+		return (flags & SAMPLED) != 0;
+	}
+
+	/**
+	  * Marks the iteration of this broadcast as a mini-batch (sampled) or full iteration.
+	  */
+	public void setSampled(boolean sampled) {
+		flags = (sampled ? flags | SAMPLED : flags & ~SAMPLED);
+	}
+
+	/**
+	  * Returns whether map tasks write the labels of their points instead of assigning them.
+	  */
+	public boolean isLabel() {
+		return (flags & LABEL) != 0;
+	}
+
+	/**
+	  * Marks this broadcast as the final labelling pass.
+	  */
+	public void setLabel(boolean label) {
+		flags = (label ? flags | LABEL : flags & ~LABEL);
+	}
+
+	public long getIteration() {
+		return iteration;
+	}
+
+	public long getBaseIteration() {
+		return baseIteration;
+	}
+
+	public int getNumCentroids() {
+		return numCentroids;
+	}
+
+	/**
+	  * Returns the number of centroids carried by this broadcast.
+	  *
+	  * @return int Number of changed centroids, or k for a full broadcast.
+	  */
+	public int size() {
+		return indices.length;
+	}
+
+	/**
+	  * Returns the centroid index of the i-th change.
+	  */
+	public int getIndex(int i) {
+		return indices[i];
+	}
+
+	/**
+	  * Returns the new positions of the changed centroids, in the order of their indices.
+	  */
+	public DataPointVector getCentroids() {
+		return centroids;
+	}
+}
\ No newline at end of file
@@ -98,7 +98,19 @@ public class DataPoint implements Value, Key {
 	  * @return boolean
 	  */
 	public boolean withinT1(DataPoint dataPoint) {
-		return (simpleDistance(dataPoint) < T1);
+		return withinT1(temperature, dataPoint.temperature);
+	}
+
+	/**
+	  * Checks if two points, given by their temperature fields, are within T1 distance of each other.
+	  * Primitive form of withinT1(DataPoint) for callers iterating over a columnar DataPointVector.
+	  *
+	  * @param temperature1 Temperature of the first point.
+	  * @param temperature2 Temperature of the second point.
+	  * @return boolean
+	  */
+	public static boolean withinT1(int temperature1, int temperature2) {
+		return (simpleDistance(temperature1, temperature2) < T1);
 	}
 
 	/**
@@ -122,7 +134,18 @@ public class DataPoint implements Value, Key {
 	  * @return simple distance value.
 	  */
 	public long simpleDistance(DataPoint dataPoint) {
-		return Math.abs(temperature - dataPoint.temperature);
+		return simpleDistance(temperature, dataPoint.temperature);
+	}
+
+	/**
+	  * Primitive form of simpleDistance(DataPoint).
+	  *
+	  * @param temperature1 Temperature of the first point.
+	  * @param temperature2 Temperature of the second point.
+	  * @return simple distance value.
+	  */
+	public static long simpleDistance(int temperature1, int temperature2) {
+		return Math.abs(temperature1 - temperature2);
 	}
 
 	/**
@@ -134,8 +157,22 @@ public class DataPoint implements Value, Key {
 	  * @return double A complex distance value.
 	  */
 	public double complexDistance(DataPoint dataPoint) {
-		return Math.abs((year - dataPoint.year) * (year - dataPoint.year) 
-				+ (temperature - dataPoint.temperature) * (temperature - dataPoint.temperature));
+		return complexDistance(year, temperature, dataPoint.year, dataPoint.temperature);
+	}
+
+	/**
+	  * Primitive form of complexDistance(DataPoint).
+	  * Lets the clustering code compute distances straight from the columns of a DataPointVector.
+	  *
+	  * @param year1 Year of the first point.
+	  * @param temperature1 Temperature of the first point.
+	  * @param year2 Year of the second point.
+	  * @param temperature2 Temperature of the second point.
+	  * @return double A complex distance value.
+	  */
+	public static double complexDistance(int year1, int temperature1, int year2, int temperature2) {
+		return Math.abs((year1 - year2) * (year1 - year2) 
+				+ (temperature1 - temperature2) * (temperature1 - temperature2));
 	}
 
 	/**
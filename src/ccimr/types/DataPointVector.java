@@ -3,14 +3,13 @@
   */
 package ccimr.types;
 
-import java.io.IOException;
-import java.io.EOFException;
-import java.io.ByteArrayOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.DataOutputStream;
-import java.io.DataInputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import cgl.imr.base.Value;
 import cgl.imr.base.SerializationException;
@@ -19,33 +18,91 @@ import ccimr.types.DataPoint;
 
 /**
   * A generic Vector of Data Points.
+  * The points are stored column-wise: the year, temperature and count fields live in parallel
+  * int arrays that grow as needed, so a partition costs three ints per point and no object headers.
   */
 public class DataPointVector implements Value {
 
-	/** 
-	  *ArrayList of dataPoints encapsulated by the Vector.
+	/**
+	  * Number of bytes used by a single point in the raw marshalled form (year, temperature and count).
+	  */
+	public static final int BYTES_PER_POINT = 3 * 4;
+
+	/**
+	  * Version of the marshalled form, its first byte.
+	  */
+	private static final byte VERSION = 1;
+
+	/**
+	  * Size of the header of the marshalled form: version, flags and number of points.
+	  */
+	private static final int HEADER_SIZE = 1 + 1 + 4;
+
+	/**
+	  * Flags of the marshalled form: the columns are varints, the year, temperature and count columns hold
+	  * differences, the body is deflated, and the body is sparse (only points with a non-zero field, by index).
+	  */
+	private static final int VARINT = 1;
+	private static final int DELTA_YEARS = 2;
+	private static final int DELTA_TEMPERATURES = 4;
+	private static final int DELTA_COUNTS = 8;
+	private static final int DEFLATE = 16;
+	private static final int SPARSE = 32;
+
+	/**
+	  * Size of the encoded columns from which getBytes() tries to deflate them, if enabled with setDeflate().
+	  */
+	private static final int DEFLATE_THRESHOLD = 64 * 1024;
+
+	/**
+	  * Smallest number of bytes a point takes in a varint body that is not sparse: one per column.
+	  */
+	private static final int MIN_VARINT_BYTES_PER_POINT = 3;
+
+	/**
+	  * Largest number of bytes deflate expands a single deflated byte to, which bounds the stated length of a
+	  * deflated body by the bytes that follow it.
 	  */
-	private ArrayList<DataPoint> dataPoints;
+	private static final long MAX_DEFLATE_RATIO = 1032;
+
+	/**
+	  * Whether getBytes() deflates large bodies, for all vectors of this JVM.
+	  */
+	private static volatile boolean deflate = false;
+
+	/**
+	  * Capacity allocated by the default constructor.
+	  */
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	  * Columns holding the year, temperature and count fields of the points in the Vector.
+	  */
+	private int[] years, temperatures, counts;
+
+	/**
+	  * Number of points currently held in the columns.
+	  */
+	private int size;
 
 	/**
 	  * Default Constructor.
-	  * Allocates memory for the dataPoints ArrayList.
+	  * Allocates the columns with a small default capacity.
 	  */
 	public DataPointVector() {
-		dataPoints = new ArrayList<DataPoint>();
+		allocate(DEFAULT_CAPACITY);
+		size = 0;
 	}
 
 	/**
 	  * Parameterized Constructor.
-	  * Allocates the dataPoints ArrayList of size length, the parameter passed.
+	  * Creates a Vector of length points, each with all fields set to 0.
 	  *
-	  * @param length Initial size of the dataPoints ArrayList.
+	  * @param length Initial number of points in the Vector.
 	  */
 	public DataPointVector(int length) {
-		dataPoints = new ArrayList<DataPoint>();
-		for(int i = 0; i < length; i++) {
-			this.add(new DataPoint());
-		}
+		allocate(Math.max(length, DEFAULT_CAPACITY));
+		size = length;
 	}
 
 	/**
@@ -55,63 +112,450 @@ public class DataPointVector implements Value {
 	  * @param dataPointVector The source vector to copy.
 	  */
 	public DataPointVector(DataPointVector dataPointVector) {
-		dataPoints = new ArrayList<DataPoint>();
-		for(int i = 0; i < dataPointVector.size(); i++) {
-			this.add(dataPointVector.get(i));
-		}
+		size = dataPointVector.size;
+		years = Arrays.copyOf(dataPointVector.years, Math.max(size, DEFAULT_CAPACITY));
+		temperatures = Arrays.copyOf(dataPointVector.temperatures, Math.max(size, DEFAULT_CAPACITY));
+		counts = Arrays.copyOf(dataPointVector.counts, Math.max(size, DEFAULT_CAPACITY));
 	}
 
 	/**
 	  * Converts vector to bytes.
-	  * Function converts the DataPointVector into an array of bytes.
+	  * The marshalled form is a header (format version, flags and number of points) followed by the year,
+	  * temperature and count columns, one after the other. Each column is written either as raw ints or as
+	  * zigzag varints of its values or of the differences between consecutive values, whichever is smallest.
+	  * If it is smaller, the sparse form only holds the points with a non-zero field: their number, their indices
+	  * (as varints of the differences) and then their columns, so that a mostly empty vector of per-centroid sums
+	  * costs what its non-empty centroids do.
+	  * With setDeflate(true), bodies of DEFLATE_THRESHOLD bytes or more are also deflated when that makes them smaller.
 	  *
 	  * @return byte[] The array of bytes from the object.
 	  */
-	public byte[] getBytes() 
+	public byte[] getBytes()
 	throws SerializationException {
-		ByteArrayOutputStream bOutputStream = new ByteArrayOutputStream();
+		int[][] columns = { years, temperatures, counts };
+		int length = size;
+		int flags = VARINT | deltaFlags(columns, length);
+		int bodySize = varIntSize(columns, length, flags);
 
-		DataOutputStream dOutputStream = new DataOutputStream(bOutputStream);
-		byte[] marshalledBytes = null;
+		int[] indices = null;
+		int nonZero = 0;
+		for(int i = 0; i < size; i++) {
+			if(years[i] != 0 || temperatures[i] != 0 || counts[i] != 0) {
+				nonZero++;
+			}
+		}
+		if(nonZero < size) {
+			int[] entryIndices = new int[nonZero];
+			int[][] entries = { new int[nonZero], new int[nonZero], new int[nonZero] };
+			for(int i = 0, j = 0; i < size; i++) {
+				if(years[i] != 0 || temperatures[i] != 0 || counts[i] != 0) {
+					entryIndices[j] = i;
+					entries[0][j] = years[i];
+					entries[1][j] = temperatures[i];
+					entries[2][j] = counts[i];
+					j++;
+				}
+			}
+			int sparseFlags = VARINT | SPARSE | deltaFlags(entries, nonZero);
+			int sparseSize = 4 + varIntColumnSize(entryIndices, nonZero, true) + varIntSize(entries, nonZero, sparseFlags);
+			if(sparseSize < bodySize) {
+				columns = entries;
+				length = nonZero;
+				indices = entryIndices;
+				flags = sparseFlags;
+				bodySize = sparseSize;
+			}
+		}
 
-		try {
-			for(int i = 0; i < dataPoints.size(); i++) {
-				this.get(i).writeBytesToDataOutputStream(dOutputStream);
-			}	
-			dOutputStream.flush();
-			marshalledBytes = bOutputStream.toByteArray();
-			bOutputStream = null;
-			dOutputStream = null;
-		} catch (IOException ioe) {
-			throw new SerializationException(ioe);
+		byte[] body;
+		if(indices == null && bodySize >= size * BYTES_PER_POINT) {
+			flags = 0;
+			ByteBuffer buffer = ByteBuffer.allocate(size * BYTES_PER_POINT);
+			IntBuffer intBuffer = buffer.asIntBuffer();
+			intBuffer.put(years, 0, size);
+			intBuffer.put(temperatures, 0, size);
+			intBuffer.put(counts, 0, size);
+			body = buffer.array();
+		} else {
+			body = new byte[bodySize];
+			int position = 0;
+			if(indices != null) {
+				ByteBuffer.wrap(body).putInt(length);
+				position = writeVarIntColumn(indices, length, true, body, 4);
+			}
+			for(int c = 0; c < columns.length; c++) {
+				position = writeVarIntColumn(columns[c], length, (flags & (DELTA_YEARS << c)) != 0, body, position);
+			}
+		}
+
+		byte[] deflated = (deflate && body.length >= DEFLATE_THRESHOLD ? deflate(body) : null);
+		ByteBuffer buffer;
+		if(deflated != null) {
+			buffer = ByteBuffer.allocate(HEADER_SIZE + 4 + deflated.length);
+			buffer.put(VERSION).put((byte) (flags | DEFLATE)).putInt(size);
+			buffer.putInt(body.length).put(deflated);
+		} else {
+			buffer = ByteBuffer.allocate(HEADER_SIZE + body.length);
+			buffer.put(VERSION).put((byte) flags).putInt(size);
+			buffer.put(body);
 		}
-		return marshalledBytes;
+		return buffer.array();
 	}
 
 
 	/**
 	  * Converts bytes array to this DataPointVector object.
-	  * Function converts an array of bytes to this DataPointVector object.
+	  * Function replaces the contents of this DataPointVector with the points in an array of bytes
+	  * produced by getBytes(). The columns are sized from the header before decoding.
 	  *
 	  * @param byte[] byte array to convert to the DataPointVector.
 	  */
-	public void fromBytes(byte[] bytes) 
+	public void fromBytes(byte[] bytes)
 	throws SerializationException {
-		ByteArrayInputStream baInputStream = new ByteArrayInputStream(bytes);
-		DataInputStream din = new DataInputStream(baInputStream);
+		int length = sizeOf(bytes);
+		if(years.length < length) {
+			allocate(length);
+		}
+		decode(bytes, length, years, temperatures, counts, null, null, null);
+		size = length;
+	}
+
+	/**
+	  * Sets whether getBytes() deflates large bodies in this JVM. Deflating costs several times the encoding
+	  * time, so it only pays off when the network is slower than the CPU. Deflated and plain forms are both
+	  * always accepted by fromBytes().
+	  *
+	  * @param enabled True to deflate bodies of DEFLATE_THRESHOLD bytes or more.
+	  */
+	public static void setDeflate(boolean enabled) {
+		deflate = enabled;
+	}
 
+	/**
+	  * Returns the number of points in an array of bytes produced by getBytes(), without decoding it.
+	  * The number is checked against the size of the body, so that a corrupt header is rejected before
+	  * anything is allocated for it. Sparse bodies hold any number of empty points and are not bounded.
+	  *
+	  * @param bytes Marshalled DataPointVector.
+	  * @return int Number of points.
+	  */
+	public static int sizeOf(byte[] bytes)
+	throws SerializationException {
+		if(bytes.length < HEADER_SIZE || bytes[0] != VERSION) {
+			throw new SerializationException("Invalid DataPointVector header: " + bytes.length + " bytes"
+					+ (bytes.length == 0 ? "." : ", version " + bytes[0] + "."));
+		}
+		int flags = bytes[1];
+		int length = ByteBuffer.wrap(bytes).getInt(2);
+		long bodySize = ((flags & DEFLATE) != 0 ? inflatedSize(bytes, HEADER_SIZE) : bytes.length - HEADER_SIZE);
+		if(length < 0 || ((flags & VARINT) == 0 ? bodySize != (long) length * BYTES_PER_POINT
+				: (flags & SPARSE) == 0 && bodySize < (long) length * MIN_VARINT_BYTES_PER_POINT)) {
+			throw new SerializationException("Invalid DataPointVector length: " + bytes.length + " bytes for "
+					+ length + " points.");
+		}
+		return length;
+	}
+
+	/**
+	  * Adds the points of an array of bytes produced by getBytes() to per-index accumulators, without
+	  * decoding them into a DataPointVector. The point at index i is added to element i of each accumulator.
+	  *
+	  * @param bytes Marshalled DataPointVector.
+	  * @param yearSums Accumulator for the year field.
+	  * @param temperatureSums Accumulator for the temperature field.
+	  * @param countSums Accumulator for the count field.
+	  */
+	public static void sumBytes(byte[] bytes, long[] yearSums, long[] temperatureSums, long[] countSums)
+	throws SerializationException {
+		int length = sizeOf(bytes);
+		if(yearSums.length < length || temperatureSums.length < length || countSums.length < length) {
+			throw new SerializationException("Accumulators too small for " + length + " points.");
+		}
+		decode(bytes, length, null, null, null, yearSums, temperatureSums, countSums);
+	}
+
+	/**
+	  * Decodes the columns of an array of bytes produced by getBytes(), either into int columns or, if those are
+	  * null, by adding them to long accumulators.
+	  *
+	  * @param bytes Marshalled DataPointVector.
+	  * @param length Number of points, from sizeOf().
+	  */
+	private static void decode(byte[] bytes, int length, int[] years, int[] temperatures, int[] counts,
+			long[] yearSums, long[] temperatureSums, long[] countSums)
+	throws SerializationException {
+		int flags = bytes[1];
+		byte[] body = bytes;
+		int position = HEADER_SIZE;
+		if((flags & DEFLATE) != 0) {
+			body = inflate(bytes, HEADER_SIZE);
+			position = 0;
+		}
+
+		int[][] columns = { years, temperatures, counts };
+		long[][] sums = { yearSums, temperatureSums, countSums };
 		try {
-			try {
-				while(true) {
-					this.add(DataPoint.readFromDataInputStream(din));
+			if((flags & SPARSE) != 0) {
+				decodeSparse(body, position, length, flags, columns, sums);
+				return;
+			}
+			if((flags & VARINT) != 0) {
+				for(int c = 0; c < columns.length; c++) {
+					position = readVarIntColumn(body, position, length, (flags & (DELTA_YEARS << c)) != 0,
+							columns[c], sums[c]);
+				}
+				if(position != body.length) {
+					throw new SerializationException("Invalid DataPointVector: " + (body.length - position)
+							+ " trailing bytes.");
+				}
+				return;
+			}
+
+			if(body.length - position != length * BYTES_PER_POINT) {
+				throw new SerializationException("Invalid DataPointVector body: " + (body.length - position)
+						+ " bytes for " + length + " points.");
+			}
+			IntBuffer intBuffer = ByteBuffer.wrap(body, position, body.length - position).slice().asIntBuffer();
+			for(int c = 0; c < columns.length; c++) {
+				if(columns[c] != null) {
+					intBuffer.get(columns[c], 0, length);
+				} else {
+					for(int i = 0; i < length; i++) {
+						sums[c][i] += intBuffer.get();
+					}
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new SerializationException("Truncated DataPointVector: " + bytes.length + " bytes.");
+		}
+	}
+
+	/**
+	  * Decodes a sparse body: the entries are read into temporary columns and then placed at their indices, or
+	  * added to the accumulators at their indices. Points without an entry are 0.
+	  *
+	  * @param body Sparse body.
+	  * @param position Position of the number of entries in body.
+	  * @param length Number of points.
+	  * @param flags Flags of the header.
+	  * @param columns Int columns to decode into, or nulls.
+	  * @param sums Accumulators to add to if the columns are null.
+	  */
+	private static void decodeSparse(byte[] body, int position, int length, int flags, int[][] columns, long[][] sums)
+	throws SerializationException {
+		if(body.length - position < 4) {
+			throw new SerializationException("Truncated sparse DataPointVector: " + (body.length - position)
+					+ " body bytes.");
+		}
+		int numEntries = ByteBuffer.wrap(body).getInt(position);
+		if(numEntries < 0 || numEntries > length) {
+			throw new SerializationException("Invalid sparse DataPointVector: " + numEntries + " entries of " + length);
+		}
+		int[] indices = new int[numEntries];
+		position = readVarIntColumn(body, position + 4, numEntries, true, indices, null);
+		int previous = -1;
+		for(int j = 0; j < numEntries; j++) {
+			if(indices[j] <= previous || indices[j] >= length) {
+				throw new SerializationException("Invalid sparse DataPointVector index: " + indices[j]);
+			}
+			previous = indices[j];
+		}
+
+		int[] entries = new int[numEntries];
+		for(int c = 0; c < columns.length; c++) {
+			position = readVarIntColumn(body, position, numEntries, (flags & (DELTA_YEARS << c)) != 0, entries, null);
+			if(columns[c] != null) {
+				Arrays.fill(columns[c], 0, length, 0);
+				for(int j = 0; j < numEntries; j++) {
+					columns[c][indices[j]] = entries[j];
+				}
+			} else {
+				for(int j = 0; j < numEntries; j++) {
+					sums[c][indices[j]] += entries[j];
+				}
+			}
+		}
+		if(position != body.length) {
+			throw new SerializationException("Invalid DataPointVector: " + (body.length - position) + " trailing bytes.");
+		}
+	}
+
+	/**
+	  * Chooses, for each column, whether the varints of its values or of its differences are smaller.
+	  *
+	  * @param columns Year, temperature and count columns.
+	  * @param length Number of values in each column.
+	  * @return int The DELTA_ flags of the columns to write as differences.
+	  */
+	private static int deltaFlags(int[][] columns, int length) {
+		int flags = 0;
+		for(int c = 0; c < columns.length; c++) {
+			if(varIntColumnSize(columns[c], length, true) < varIntColumnSize(columns[c], length, false)) {
+				flags |= DELTA_YEARS << c;
+			}
+		}
+		return flags;
+	}
+
+	/**
+	  * Returns the number of bytes the columns take as zigzag varints, with the DELTA_ flags given.
+	  */
+	private static int varIntSize(int[][] columns, int length, int flags) {
+		int total = 0;
+		for(int c = 0; c < columns.length; c++) {
+			total += varIntColumnSize(columns[c], length, (flags & (DELTA_YEARS << c)) != 0);
+		}
+		return total;
+	}
+
+	/**
+	  * Returns the number of bytes a column takes as zigzag varints.
+	  *
+	  * @param column Column to measure.
+	  * @param length Number of values in the column.
+	  * @param delta Whether the differences between consecutive values are written instead of the values.
+	  * @return int Size of the encoded column.
+	  */
+	private static int varIntColumnSize(int[] column, int length, boolean delta) {
+		int total = 0;
+		int previous = 0;
+		for(int i = 0; i < length; i++) {
+			int value = (delta ? column[i] - previous : column[i]);
+			previous = column[i];
+			int zigzag = (value << 1) ^ (value >> 31);
+			total += (38 - Integer.numberOfLeadingZeros(zigzag | 1)) / 7;
+		}
+		return total;
+	}
+
+	/**
+	  * Writes a column as zigzag varints, 7 bits per byte with the high bit set on all but the last byte.
+	  *
+	  * @return int Position after the column.
+	  */
+	private static int writeVarIntColumn(int[] column, int length, boolean delta, byte[] output, int position) {
+		int previous = 0;
+		for(int i = 0; i < length; i++) {
+			int value = (delta ? column[i] - previous : column[i]);
+			previous = column[i];
+			int zigzag = (value << 1) ^ (value >> 31);
+			while((zigzag & ~0x7F) != 0) {
+				output[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+				zigzag >>>= 7;
+			}
+			output[position++] = (byte) zigzag;
+		}
+		return position;
+	}
+
+	/**
+	  * Reads a column written by writeVarIntColumn() into an int column, or adds it to an accumulator if the
+	  * column is null.
+	  *
+	  * @return int Position after the column.
+	  */
+	private static int readVarIntColumn(byte[] input, int position, int length, boolean delta, int[] column,
+			long[] sums)
+	throws SerializationException {
+		int previous = 0;
+		for(int i = 0; i < length; i++) {
+			int zigzag = 0;
+			int shift = 0;
+			byte b;
+			do {
+				if(shift > 28) {
+					throw new SerializationException("Invalid varint in DataPointVector.");
 				}
+				b = input[position++];
+				zigzag |= (b & 0x7F) << shift;
+				shift += 7;
+			} while(b < 0);
+			int value = (zigzag >>> 1) ^ -(zigzag & 1);
+			if(delta) {
+				value += previous;
+				previous = value;
 			}
-			catch(EOFException e){}
+			if(column != null) {
+				column[i] = value;
+			} else {
+				sums[i] += value;
+			}
+		}
+		return position;
+	}
 
-			din.close();
-			baInputStream.close();
-		} catch (IOException ioe) {
-			throw new SerializationException(ioe);
+	/**
+	  * Deflates a body with the fastest compression level.
+	  *
+	  * @return byte[] The compressed body, or null if it would not be smaller.
+	  */
+	private static byte[] deflate(byte[] body) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(body);
+			deflater.finish();
+			byte[] output = new byte[body.length - 4];
+			int length = 0;
+			while(!deflater.finished() && length < output.length) {
+				length += deflater.deflate(output, length, output.length - length);
+			}
+			return (deflater.finished() ? Arrays.copyOf(output, length) : null);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	  * Returns the uncompressed length stated before a deflated body, after checking that deflate could expand the
+	  * compressed data that follows to that many bytes.
+	  *
+	  * @param bytes Marshalled DataPointVector.
+	  * @param offset Position of the uncompressed length.
+	  * @return int The uncompressed length of the body.
+	  */
+	private static int inflatedSize(byte[] bytes, int offset)
+	throws SerializationException {
+		if(bytes.length < offset + 4) {
+			throw new SerializationException("Truncated DataPointVector: " + bytes.length + " bytes.");
+		}
+		int length = ByteBuffer.wrap(bytes).getInt(offset);
+		if(length < 0 || length > (bytes.length - offset - 4) * MAX_DEFLATE_RATIO) {
+			throw new SerializationException("Invalid DataPointVector body length: " + length + " from "
+					+ (bytes.length - offset - 4) + " deflated bytes.");
+		}
+		return length;
+	}
+
+	/**
+	  * Inflates the body of a deflated array of bytes: its uncompressed length followed by the compressed data.
+	  *
+	  * @param bytes Marshalled DataPointVector.
+	  * @param offset Position of the uncompressed length.
+	  * @return byte[] The uncompressed body.
+	  */
+	private static byte[] inflate(byte[] bytes, int offset)
+	throws SerializationException {
+		int length = inflatedSize(bytes, offset);
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(bytes, offset + 4, bytes.length - offset - 4);
+			byte[] body = new byte[length];
+			int position = 0;
+			while(position < length && !inflater.finished()) {
+				int read = inflater.inflate(body, position, length - position);
+				if(read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				position += read;
+			}
+			if(position != length || !inflater.finished()) {
+				throw new SerializationException("Invalid deflated DataPointVector body.");
+			}
+			return body;
+		} catch (DataFormatException e) {
+			throw new SerializationException("Invalid deflated DataPointVector body: " + e.getMessage());
+		} finally {
+			inflater.end();
 		}
 	}
 
@@ -121,17 +565,107 @@ public class DataPointVector implements Value {
 	  * @param dataPoint The DataPoint object to add to the DataPointVector.
 	  */
 	public void add(DataPoint dataPoint) {
-		dataPoints.add(dataPoint);
+		add(dataPoint.year, dataPoint.temperature, dataPoint.count);
 	}
 
 	/**
-	  * Returns the DataPoint object at a given index of the DataPointVector.
+	  * Appends a point, given by its fields, to the DataPointVector.
+	  *
+	  * @param year Year of the point.
+	  * @param temperature Temperature of the point.
+	  * @param count Count of the point.
+	  */
+	public void add(int year, int temperature, int count) {
+		if(size == years.length) {
+			grow(size + 1);
+		}
+		years[size] = year;
+		temperatures[size] = temperature;
+		counts[size] = count;
+		size++;
+	}
+
+	/**
+	  * Returns a copy of the point at a given index of the DataPointVector.
+	  * Changes to the returned DataPoint are not reflected in the Vector; use set() or the
+	  * index-based mutators for that.
 	  *
 	  * @param index Index of the DataPoint to return in the DataPointVector.
 	  * @return DataPoint The DataPoint at given index of the DataPointVector.
 	  */
 	public DataPoint get(int index) {
-		return dataPoints.get(index);
+		checkIndex(index);
+		DataPoint dataPoint = new DataPoint();
+		dataPoint.year = years[index];
+		dataPoint.temperature = temperatures[index];
+		dataPoint.count = counts[index];
+		return dataPoint;
+	}
+
+	/**
+	  * Returns the year of the point at a given index.
+	  *
+	  * @param index Index of the point in the DataPointVector.
+	  * @return int Year of the point.
+	  */
+	public int getYear(int index) {
+		checkIndex(index);
+		return years[index];
+	}
+
+	/**
+	  * Returns the temperature of the point at a given index.
+	  *
+	  * @param index Index of the point in the DataPointVector.
+	  * @return int Temperature of the point.
+	  */
+	public int getTemperature(int index) {
+		checkIndex(index);
+		return temperatures[index];
+	}
+
+	/**
+	  * Returns the count of the point at a given index.
+	  *
+	  * @param index Index of the point in the DataPointVector.
+	  * @return int Count of the point.
+	  */
+	public int getCount(int index) {
+		checkIndex(index);
+		return counts[index];
+	}
+
+	/**
+	  * Overwrites the fields of the point at a given index.
+	  *
+	  * @param index Index of the point in the DataPointVector.
+	  * @param year New year of the point.
+	  * @param temperature New temperature of the point.
+	  * @param count New count of the point.
+	  */
+	public void set(int index, int year, int temperature, int count) {
+		checkIndex(index);
+		years[index] = year;
+		temperatures[index] = temperature;
+		counts[index] = count;
+	}
+
+	/**
+	  * Returns a copy of the points in [from, to), counts included.
+	  *
+	  * @param from Index of the first point to copy.
+	  * @param to Index after the last point to copy.
+	  * @return DataPointVector The points, at indices shifted down by from.
+	  */
+	public DataPointVector subVector(int from, int to) {
+		if(from < 0 || to > size || from > to) {
+			throw new IndexOutOfBoundsException("Range: [" + from + ", " + to + "), Size: " + size);
+		}
+		DataPointVector dataPointVector = new DataPointVector(to - from);
+		System.arraycopy(years, from, dataPointVector.years, 0, to - from);
+		System.arraycopy(temperatures, from, dataPointVector.temperatures, 0, to - from);
+		System.arraycopy(counts, from, dataPointVector.counts, 0, to - from);
+		return dataPointVector;
 	}
 
 	/**
@@ -140,21 +674,39 @@ public class DataPointVector implements Value {
 	  * @return String The String representation of the vector.
 	  */
 	public String toString() {
-		String output = "[";
-		for(int i = 0; i < this.size(); i++) {
-			output += "[" + this.get(i).toString() + "],";
+		StringBuilder output = new StringBuilder("[");
+		for(int i = 0; i < size; i++) {
+			output.append("[").append(years[i]).append(",").append(temperatures[i]).append("],");
 		}
-		return output + "]";
+		return output.append("]").toString();
 	}
 
 	/**
 	  * Returns the size or length of the DataPointVector.
-	  * Size refers to the number of DataPoint objects in the DataPointVector.
+	  * Size refers to the number of points in the DataPointVector.
 	  *
 	  * @return int Current size of the DataPointVector.
 	  */
 	public int size() {
-		return dataPoints.size();
+		return size;
+	}
+
+	/**
+	  * Grows the columns, if needed, so that minCapacity points can be held without reallocating.
+	  *
+	  * @param minCapacity Number of points the DataPointVector should be able to hold.
+	  */
+	public void ensureCapacity(int minCapacity) {
+		if(years.length < minCapacity) {
+			grow(minCapacity);
+		}
+	}
+
+	/**
+	  * Removes all points from the DataPointVector, keeping the allocated columns.
+	  */
+	public void clear() {
+		size = 0;
 	}
 
 	/**
@@ -164,6 +716,80 @@ public class DataPointVector implements Value {
 	  * @param dataPoint The DataPoint object to add.
 	  */
 	public void sumDataPointToElement(int index, DataPoint dataPoint) {
-		this.get(index).sumDataPoint(dataPoint);
+		sumToElement(index, dataPoint.year, dataPoint.temperature);
+	}
+
+	/**
+	  * Adds a year and temperature to the point at a given offset. The count is left unchanged.
+	  *
+	  * @param index Index of the point in the DataPointVector.
+	  * @param year Year to add.
+	  * @param temperature Temperature to add.
+	  */
+	public void sumToElement(int index, int year, int temperature) {
+		checkIndex(index);
+		years[index] += year;
+		temperatures[index] += temperature;
+	}
+
+	/**
+	  * Increments the count of the point at a given offset.
+	  *
+	  * @param index Index of the point in the DataPointVector.
+	  */
+	public void incrementCounter(int index) {
+		checkIndex(index);
+		counts[index]++;
+	}
+
+	/**
+	  * Adds every point of another vector of the same size to the point at the same offset in this vector.
+	  * All three fields, including the count, are summed.
+	  *
+	  * @param dataPointVector Vector of partial sums to add to this vector.
+	  */
+	public void sumVector(DataPointVector dataPointVector) {
+		if(dataPointVector.size != size) {
+			throw new IllegalArgumentException("Size mismatch: " + dataPointVector.size + " != " + size);
+		}
+		for(int i = 0; i < size; i++) {
+			years[i] += dataPointVector.years[i];
+			temperatures[i] += dataPointVector.temperatures[i];
+			counts[i] += dataPointVector.counts[i];
+		}
+	}
+
+	/**
+	  * Allocates empty columns of the given capacity, discarding the current contents.
+	  *
+	  * @param capacity Number of points the columns can hold.
+	  */
+	private void allocate(int capacity) {
+		years = new int[capacity];
+		temperatures = new int[capacity];
+		counts = new int[capacity];
+	}
+
+	/**
+	  * Grows the columns to hold at least minCapacity points, keeping the current contents.
+	  *
+	  * @param minCapacity Minimum number of points the columns must hold.
+	  */
+	private void grow(int minCapacity) {
+		int capacity = Math.max(minCapacity, years.length + (years.length >> 1));
+		years = Arrays.copyOf(years, capacity);
+		temperatures = Arrays.copyOf(temperatures, capacity);
+		counts = Arrays.copyOf(counts, capacity);
+	}
+
+	/**
+	  * Checks that an index lies within the current size of the DataPointVector.
+	  *
+	  * @param index Index to check.
+	  */
+	private void checkIndex(int index) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
 	}
 }
\ No newline at end of file
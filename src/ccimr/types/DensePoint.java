@@ -0,0 +1,116 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.types;
+
+import java.util.Arrays;
+
+/**
+  * A point of a dense N-dimensional Data Set, the counterpart of DataPoint for data sets with more than
+  * the [year, temperature] fields. Its text form is the coordinates separated by commas.
+  */
+public class DensePoint {
+	/**
+	  * Coordinates of the point.
+	  */
+	public double[] coordinates;
+
+	/**
+	  * Parameterized Constructor (int).
+	  * Creates a point of the given dimension with all coordinates set to 0.
+	  *
+	  * @param dimensions Number of coordinates.
+	  */
+	public DensePoint(int dimensions) {
+		coordinates = new double[dimensions];
+	}
+
+	/**
+	  * Parameterized Constructor (String).
+	  * Parses a comma separated list of coordinates. Inverse of toString() method.
+	  *
+	  * @param densePointString String representation of the point.
+	  * @param dimensions Expected number of coordinates.
+	  */
+	public DensePoint(String densePointString, int dimensions) {
+		coordinates = new double[dimensions];
+		parse(densePointString, 0, densePointString.length(), coordinates, 0, dimensions);
+	}
+
+	/**
+	  * Parses comma separated coordinates from a part of a line into an array.
+	  *
+	  * @param line Line holding the coordinates.
+	  * @param begin Index of the first character of the coordinates in line.
+	  * @param end Index after the last character of the coordinates in line.
+	  * @param coordinates Array receiving the coordinates.
+	  * @param offset Index in coordinates of the first coordinate.
+	  * @param dimensions Expected number of coordinates.
+	  */
+	public static void parse(CharSequence line, int begin, int end, double[] coordinates, int offset, int dimensions) {
+		int field = 0;
+		int start = begin;
+		for(int i = begin; i <= end; i++) {
+			if(i == end || line.charAt(i) == ',') {
+				if(field == dimensions) {
+					throw new NumberFormatException("More than " + dimensions + " coordinates: " + line.subSequence(begin, end));
+				}
+				coordinates[offset + field++] = Double.parseDouble(line.subSequence(start, i).toString().trim());
+				start = i + 1;
+			}
+		}
+		if(field != dimensions) {
+			throw new NumberFormatException("Expected " + dimensions + " coordinates: " + line.subSequence(begin, end));
+		}
+	}
+
+	/**
+	  * Returns the number of coordinates of the point.
+	  *
+	  * @return int Dimension of the point.
+	  */
+	public int dimensions() {
+		return coordinates.length;
+	}
+
+	/**
+	  * Converts the point to a String.
+	  *
+	  * @return String Coordinates separated by commas.
+	  */
+	public String toString() {
+		StringBuilder output = new StringBuilder();
+		for(int i = 0; i < coordinates.length; i++) {
+			if(i > 0) {
+				output.append(",");
+			}
+			output.append(coordinates[i]);
+		}
+		return output.toString();
+	}
+
+	/**
+	  * Overridden equals method of Object.
+	  * Two points are equal if all their coordinates are equal.
+	  *
+	  * @param object The passed object to check for equality.
+	  * @return boolean.
+	  */
+	@Override
+	public boolean equals(Object object) {
+		if(!(object instanceof DensePoint)) {
+			return false;
+		}
+		return Arrays.equals(coordinates, ((DensePoint) object).coordinates);
+	}
+
+	/**
+	  * Overridden hashCode method of Object Class.
+	  *
+	  * @return int, the hash code.
+	  */
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(coordinates);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,399 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.types;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+import java.util.Arrays;
+
+import cgl.imr.base.Value;
+import cgl.imr.base.SerializationException;
+
+/**
+  * A Vector of dense N-dimensional points with a count each, the counterpart of DataPointVector.
+  * The coordinates of all points are stored in one double array, point after point, so point i occupies
+  * [getOffset(i), getOffset(i) + dimensions()) of getValues() and the distance kernels read it in place.
+  */
+public class DensePointVector implements Value {
+
+	/**
+	  * Size of the header of the marshalled form: dimension and number of points.
+	  */
+	private static final int HEADER_SIZE = 4 + 4;
+
+	/**
+	  * Capacity, in points, allocated by the constructors.
+	  */
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	  * Number of coordinates of every point.
+	  */
+	private int dimensions;
+
+	/**
+	  * Coordinates of the points, point after point, and the count of every point.
+	  */
+	private double[] values;
+	private int[] counts;
+
+	/**
+	  * Number of points currently held.
+	  */
+	private int size;
+
+	/**
+	  * Default Constructor, to be followed by fromBytes().
+	  */
+	public DensePointVector() {
+		this(0);
+	}
+
+	/**
+	  * Parameterized Constructor.
+	  * Creates an empty Vector of points of the given dimension.
+	  *
+	  * @param dimensions Number of coordinates of every point.
+	  */
+	public DensePointVector(int dimensions) {
+		this.dimensions = dimensions;
+		allocate(DEFAULT_CAPACITY);
+		size = 0;
+	}
+
+	/**
+	  * Parameterized Constructor.
+	  * Creates a Vector of length points of the given dimension, with all coordinates and counts set to 0.
+	  *
+	  * @param dimensions Number of coordinates of every point.
+	  * @param length Initial number of points in the Vector.
+	  */
+	public DensePointVector(int dimensions, int length) {
+		this.dimensions = dimensions;
+		allocate(Math.max(length, DEFAULT_CAPACITY));
+		size = length;
+	}
+
+	/**
+	  * Copy Constructor.
+	  * Creates a deep copy of the vector passed.
+	  *
+	  * @param densePointVector The source vector to copy.
+	  */
+	public DensePointVector(DensePointVector densePointVector) {
+		dimensions = densePointVector.dimensions;
+		size = densePointVector.size;
+		values = Arrays.copyOf(densePointVector.values, Math.max(size, DEFAULT_CAPACITY) * dimensions);
+		counts = Arrays.copyOf(densePointVector.counts, Math.max(size, DEFAULT_CAPACITY));
+	}
+
+	/**
+	  * Converts vector to bytes: the dimension and number of points, then all coordinates, then all counts.
+	  *
+	  * @return byte[] The array of bytes from the object.
+	  */
+	public byte[] getBytes()
+	throws SerializationException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + size * (dimensions * 8 + 4));
+		buffer.putInt(dimensions).putInt(size);
+		buffer.asDoubleBuffer().put(values, 0, size * dimensions);
+		buffer.position(buffer.position() + size * dimensions * 8);
+		buffer.asIntBuffer().put(counts, 0, size);
+		return buffer.array();
+	}
+
+	/**
+	  * Replaces the contents of this DensePointVector, including its dimension, with the points in an array
+	  * of bytes produced by getBytes().
+	  *
+	  * @param bytes byte array to convert to the DensePointVector.
+	  */
+	public void fromBytes(byte[] bytes)
+	throws SerializationException {
+		int length = sizeOf(bytes);
+		dimensions = dimensionsOf(bytes);
+		if(counts.length < length || values.length < length * dimensions) {
+			allocate(length);
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+		buffer.asDoubleBuffer().get(values, 0, length * dimensions);
+		buffer.position(buffer.position() + length * dimensions * 8);
+		buffer.asIntBuffer().get(counts, 0, length);
+		size = length;
+	}
+
+	/**
+	  * Returns the number of points in an array of bytes produced by getBytes(), without decoding it.
+	  *
+	  * @param bytes Marshalled DensePointVector.
+	  * @return int Number of points.
+	  */
+	public static int sizeOf(byte[] bytes)
+	throws SerializationException {
+		int dimensions = dimensionsOf(bytes);
+		int length = ByteBuffer.wrap(bytes).getInt(4);
+		if(dimensions < 0 || length < 0 || bytes.length != HEADER_SIZE + (long) length * (dimensions * 8L + 4)) {
+			throw new SerializationException("Invalid DensePointVector length: " + bytes.length + " bytes.");
+		}
+		return length;
+	}
+
+	/**
+	  * Returns the dimension of the points in an array of bytes produced by getBytes(), without decoding it.
+	  *
+	  * @param bytes Marshalled DensePointVector.
+	  * @return int Number of coordinates of every point.
+	  */
+	public static int dimensionsOf(byte[] bytes)
+	throws SerializationException {
+		if(bytes.length < HEADER_SIZE) {
+			throw new SerializationException("Invalid DensePointVector length: " + bytes.length + " bytes.");
+		}
+		return ByteBuffer.wrap(bytes).getInt(0);
+	}
+
+	/**
+	  * Adds the points of an array of bytes produced by getBytes() to per-index accumulators, without
+	  * decoding them into a DensePointVector. Point i is added to [i * dimensions, (i + 1) * dimensions) of sums
+	  * and its count to countSums[i].
+	  *
+	  * @param bytes Marshalled DensePointVector.
+	  * @param sums Accumulator for the coordinates.
+	  * @param countSums Accumulator for the counts.
+	  */
+	public static void sumBytes(byte[] bytes, double[] sums, long[] countSums)
+	throws SerializationException {
+		int length = sizeOf(bytes);
+		int numValues = length * dimensionsOf(bytes);
+		if(sums.length < numValues || countSums.length < length) {
+			throw new SerializationException("Accumulators too small for " + length + " points.");
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+		DoubleBuffer doubleBuffer = buffer.asDoubleBuffer();
+		for(int i = 0; i < numValues; i++) {
+			sums[i] += doubleBuffer.get();
+		}
+		buffer.position(buffer.position() + numValues * 8);
+		IntBuffer intBuffer = buffer.asIntBuffer();
+		for(int i = 0; i < length; i++) {
+			countSums[i] += intBuffer.get();
+		}
+	}
+
+	/**
+	  * Appends a DensePoint with a count of 0.
+	  *
+	  * @param densePoint The point to add, of the dimension of this Vector.
+	  */
+	public void add(DensePoint densePoint) {
+		if(densePoint.dimensions() != dimensions) {
+			throw new IllegalArgumentException("Dimension mismatch: " + densePoint.dimensions() + " != " + dimensions);
+		}
+		add(densePoint.coordinates, 0, 0);
+	}
+
+	/**
+	  * Appends a point, read from an array, to the DensePointVector.
+	  *
+	  * @param point Array holding the coordinates of the point.
+	  * @param offset Index of the first coordinate in point.
+	  * @param count Count of the point.
+	  */
+	public void add(double[] point, int offset, int count) {
+		if(size == counts.length) {
+			grow(size + 1);
+		}
+		System.arraycopy(point, offset, values, size * dimensions, dimensions);
+		counts[size] = count;
+		size++;
+	}
+
+	/**
+	  * Returns a copy of the point at a given index.
+	  *
+	  * @param index Index of the point.
+	  * @return DensePoint The point at given index.
+	  */
+	public DensePoint get(int index) {
+		checkIndex(index);
+		DensePoint densePoint = new DensePoint(dimensions);
+		System.arraycopy(values, index * dimensions, densePoint.coordinates, 0, dimensions);
+		return densePoint;
+	}
+
+	/**
+	  * Returns the array holding the coordinates of all points, for reading them in place.
+	  * The array may be longer than size() * dimensions() and is replaced when the Vector grows.
+	  *
+	  * @return double[] The coordinates, point after point.
+	  */
+	public double[] getValues() {
+		return values;
+	}
+
+	/**
+	  * Returns the index in getValues() of the first coordinate of a point.
+	  *
+	  * @param index Index of the point.
+	  * @return int Offset of the point.
+	  */
+	public int getOffset(int index) {
+		checkIndex(index);
+		return index * dimensions;
+	}
+
+	/**
+	  * Returns the count of the point at a given index.
+	  *
+	  * @param index Index of the point.
+	  * @return int Count of the point.
+	  */
+	public int getCount(int index) {
+		checkIndex(index);
+		return counts[index];
+	}
+
+	/**
+	  * Overwrites the point at a given index.
+	  *
+	  * @param index Index of the point.
+	  * @param point Array holding the new coordinates.
+	  * @param offset Index of the first coordinate in point.
+	  * @param count New count of the point.
+	  */
+	public void set(int index, double[] point, int offset, int count) {
+		checkIndex(index);
+		System.arraycopy(point, offset, values, index * dimensions, dimensions);
+		counts[index] = count;
+	}
+
+	/**
+	  * Adds the coordinates of a point to the point at a given index. The count is left unchanged.
+	  *
+	  * @param index Index of the point in the DensePointVector.
+	  * @param point Array holding the coordinates to add.
+	  * @param offset Index of the first coordinate in point.
+	  */
+	public void sumToElement(int index, double[] point, int offset) {
+		checkIndex(index);
+		int base = index * dimensions;
+		for(int i = 0; i < dimensions; i++) {
+			values[base + i] += point[offset + i];
+		}
+	}
+
+	/**
+	  * Increments the count of the point at a given index.
+	  *
+	  * @param index Index of the point in the DensePointVector.
+	  */
+	public void incrementCounter(int index) {
+		checkIndex(index);
+		counts[index]++;
+	}
+
+	/**
+	  * Adds every point of another vector of the same size and dimension to the point at the same index,
+	  * counts included.
+	  *
+	  * @param densePointVector Vector of partial sums to add to this vector.
+	  */
+	public void sumVector(DensePointVector densePointVector) {
+		if(densePointVector.size != size || densePointVector.dimensions != dimensions) {
+			throw new IllegalArgumentException("Size mismatch: " + densePointVector.size + "x"
+					+ densePointVector.dimensions + " != " + size + "x" + dimensions);
+		}
+		for(int i = 0; i < size * dimensions; i++) {
+			values[i] += densePointVector.values[i];
+		}
+		for(int i = 0; i < size; i++) {
+			counts[i] += densePointVector.counts[i];
+		}
+	}
+
+	/**
+	  * Returns a string representation of the vector.
+	  *
+	  * @return String The String representation of the vector.
+	  */
+	public String toString() {
+		StringBuilder output = new StringBuilder("[");
+		for(int i = 0; i < size; i++) {
+			output.append("[").append(get(i)).append("],");
+		}
+		return output.append("]").toString();
+	}
+
+	/**
+	  * Returns the number of points in the DensePointVector.
+	  *
+	  * @return int Current size of the DensePointVector.
+	  */
+	public int size() {
+		return size;
+	}
+
+	/**
+	  * Returns the number of coordinates of every point.
+	  *
+	  * @return int Dimension of the points.
+	  */
+	public int dimensions() {
+		return dimensions;
+	}
+
+	/**
+	  * Grows the Vector, if needed, so that minCapacity points can be held without reallocating.
+	  *
+	  * @param minCapacity Number of points the DensePointVector should be able to hold.
+	  */
+	public void ensureCapacity(int minCapacity) {
+		if(counts.length < minCapacity) {
+			grow(minCapacity);
+		}
+	}
+
+	/**
+	  * Removes all points, keeping the allocated arrays.
+	  */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	  * Allocates empty arrays of the given capacity, discarding the current contents.
+	  *
+	  * @param capacity Number of points the arrays can hold.
+	  */
+	private void allocate(int capacity) {
+		values = new double[capacity * dimensions];
+		counts = new int[capacity];
+	}
+
+	/**
+	  * Grows the arrays to hold at least minCapacity points, keeping the current contents.
+	  *
+	  * @param minCapacity Minimum number of points the arrays must hold.
+	  */
+	private void grow(int minCapacity) {
+		int capacity = Math.max(minCapacity, counts.length + (counts.length >> 1));
+		values = Arrays.copyOf(values, capacity * dimensions);
+		counts = Arrays.copyOf(counts, capacity);
+	}
+
+	/**
+	  * Checks that an index lies within the current size of the DensePointVector.
+	  *
+	  * @param index Index to check.
+	  */
+	private void checkIndex(int index) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,17 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.types;
+
+/**
+  * Distance kernels replacing the scalar loops of DistanceMetric, loaded by DistanceMetric when available.
+  * The arguments are those of DistanceMetric.distance().
+  */
+interface DistanceKernels {
+
+	double squaredEuclidean(double[] a, int aOffset, double[] b, int bOffset, int dimensions);
+
+	double l1(double[] a, int aOffset, double[] b, int bOffset, int dimensions);
+
+	double cosine(double[] a, int aOffset, double[] b, int bOffset, int dimensions);
+}
\ No newline at end of file
@@ -0,0 +1,175 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.types;
+
+/**
+  * Distance metrics between dense N-dimensional points, used as the cheap (canopy) and expensive (clustering)
+  * metric of the dense clustering tasks.
+  * The points are read in place from the blocks of a DensePointVector, given by an array and an offset.
+  * The kernels are plain counted loops with independent accumulators, which the JIT unrolls and
+  * compiles to SIMD instructions where the platform allows. When the optional VectorDistanceKernels class
+  * (built by the vector target of the Makefile) is on the class path and the JVM runs with
+  * --add-modules jdk.incubator.vector, its Vector API kernels are used instead.
+  */
+public enum DistanceMetric {
+
+	/**
+	  * Sum of the squared coordinate differences.
+	  */
+	SQUARED_EUCLIDEAN("squared-euclidean") {
+		public double distance(double[] a, int aOffset, double[] b, int bOffset, int dimensions) {
+			if(VECTOR_KERNELS != null) {
+				return VECTOR_KERNELS.squaredEuclidean(a, aOffset, b, bOffset, dimensions);
+			}
+			double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+			int i = 0;
+			for(; i + 3 < dimensions; i += 4) {
+				double d0 = a[aOffset + i] - b[bOffset + i];
+				double d1 = a[aOffset + i + 1] - b[bOffset + i + 1];
+				double d2 = a[aOffset + i + 2] - b[bOffset + i + 2];
+				double d3 = a[aOffset + i + 3] - b[bOffset + i + 3];
+				sum0 += d0 * d0;
+				sum1 += d1 * d1;
+				sum2 += d2 * d2;
+				sum3 += d3 * d3;
+			}
+			for(; i < dimensions; i++) {
+				double d = a[aOffset + i] - b[bOffset + i];
+				sum0 += d * d;
+			}
+			return (sum0 + sum1) + (sum2 + sum3);
+		}
+	},
+
+	/**
+	  * Sum of the absolute coordinate differences (Manhattan distance).
+	  */
+	L1("l1") {
+		public double distance(double[] a, int aOffset, double[] b, int bOffset, int dimensions) {
+			if(VECTOR_KERNELS != null) {
+				return VECTOR_KERNELS.l1(a, aOffset, b, bOffset, dimensions);
+			}
+			double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+			int i = 0;
+			for(; i + 3 < dimensions; i += 4) {
+				sum0 += Math.abs(a[aOffset + i] - b[bOffset + i]);
+				sum1 += Math.abs(a[aOffset + i + 1] - b[bOffset + i + 1]);
+				sum2 += Math.abs(a[aOffset + i + 2] - b[bOffset + i + 2]);
+				sum3 += Math.abs(a[aOffset + i + 3] - b[bOffset + i + 3]);
+			}
+			for(; i < dimensions; i++) {
+				sum0 += Math.abs(a[aOffset + i] - b[bOffset + i]);
+			}
+			return (sum0 + sum1) + (sum2 + sum3);
+		}
+	},
+
+	/**
+	  * One minus the cosine of the angle between the points, from 0 (same direction) to 2 (opposite).
+	  * A point with all coordinates 0 is at distance 1 from every other point.
+	  */
+	COSINE("cosine") {
+		public double distance(double[] a, int aOffset, double[] b, int bOffset, int dimensions) {
+			if(VECTOR_KERNELS != null) {
+				return VECTOR_KERNELS.cosine(a, aOffset, b, bOffset, dimensions);
+			}
+			double dot0 = 0, dot1 = 0, normA0 = 0, normA1 = 0, normB0 = 0, normB1 = 0;
+			int i = 0;
+			for(; i + 1 < dimensions; i += 2) {
+				double a0 = a[aOffset + i], a1 = a[aOffset + i + 1];
+				double b0 = b[bOffset + i], b1 = b[bOffset + i + 1];
+				dot0 += a0 * b0;
+				dot1 += a1 * b1;
+				normA0 += a0 * a0;
+				normA1 += a1 * a1;
+				normB0 += b0 * b0;
+				normB1 += b1 * b1;
+			}
+			if(i < dimensions) {
+				double a0 = a[aOffset + i], b0 = b[bOffset + i];
+				dot0 += a0 * b0;
+				normA0 += a0 * a0;
+				normB0 += b0 * b0;
+			}
+			double norms = Math.sqrt((normA0 + normA1) * (normB0 + normB1));
+			return (norms == 0 ? 1 : 1 - (dot0 + dot1) / norms);
+		}
+	};
+
+	/**
+	  * Vector API kernels, null if they are not available.
+	  */
+	private static final DistanceKernels VECTOR_KERNELS = loadVectorKernels();
+
+	/**
+	  * Name of the metric in the job configuration.
+	  */
+	private final String name;
+
+	DistanceMetric(String name) {
+		this.name = name;
+	}
+
+	/**
+	  * Finds the distance between two points of the same dimension.
+	  *
+	  * @param a Array holding the first point.
+	  * @param aOffset Index of the first coordinate of the first point in a.
+	  * @param b Array holding the second point.
+	  * @param bOffset Index of the first coordinate of the second point in b.
+	  * @param dimensions Number of coordinates of each point.
+	  * @return double The distance.
+	  */
+	public abstract double distance(double[] a, int aOffset, double[] b, int bOffset, int dimensions);
+
+	/**
+	  * Returns the name of the metric used in the job configuration.
+	  *
+	  * @return String Name of the metric.
+	  */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	  * Checks whether the distances are computed by the Vector API kernels rather than the scalar loops.
+	  *
+	  * @return boolean True if the Vector API kernels are in use.
+	  */
+	public static boolean isVectorized() {
+		return VECTOR_KERNELS != null;
+	}
+
+	/**
+	  * Loads the Vector API kernels, whose class is absent from the default build and fails to initialize
+	  * unless the jdk.incubator.vector module is present.
+	  *
+	  * @return DistanceKernels The kernels, or null to use the scalar loops.
+	  */
+	private static DistanceKernels loadVectorKernels() {
+		try {
+			return (DistanceKernels) Class.forName("ccimr.types.VectorDistanceKernels").getDeclaredConstructor()
+					.newInstance();
+		} catch (ReflectiveOperationException e) {
+			return null;
+		} catch (LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	  * Finds a metric by its name in the job configuration (squared-euclidean, l1 or cosine).
+	  *
+	  * @param name Name of the metric, case insensitive.
+	  * @return DistanceMetric The metric.
+	  */
+	public static DistanceMetric forName(String name) {
+		for(DistanceMetric metric : values()) {
+			if(metric.name.equalsIgnoreCase(name.trim())) {
+				return metric;
+			}
+		}
+		throw new IllegalArgumentException("Unknown distance metric: " + name);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,105 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.types;
+
+import java.nio.ByteBuffer;
+
+import cgl.imr.base.Value;
+import cgl.imr.base.SerializationException;
+
+/**
+  * Answer of the map tasks of the clustering job to the final labelling pass: what the label files they wrote hold.
+  * Every map task answers with its own file, and the reducer merges the answers into the totals of the job.
+  */
+public class LabelReport implements Value {
+
+	/**
+	  * Size of the marshalled form: five longs.
+	  */
+	private static final int SIZE = 5 * 8;
+
+	/**
+	  * Number of label files, points labelled, points without a candidate centroid (label -1), records of the
+	  * partitions left out because their canopy center is unknown, and bytes written.
+	  */
+	private long files;
+	private long points;
+	private long unlabelled;
+	private long skipped;
+	private long bytes;
+
+	/**
+	  * Default Constructor, to be followed by fromBytes().
+	  */
+	public LabelReport() {
+	}
+
+	/**
+	  * Creates the report of one label file.
+	  *
+	  * @param points Points labelled.
+	  * @param unlabelled Points without a candidate centroid.
+	  * @param skipped Records of the partition left out.
+	  * @param bytes Size of the file.
+	  */
+	public LabelReport(long points, long unlabelled, long skipped, long bytes) {
+		this.files = 1;
+		this.points = points;
+		this.unlabelled = unlabelled;
+		this.skipped = skipped;
+		this.bytes = bytes;
+	}
+
+	public byte[] getBytes()
+	throws SerializationException {
+		return ByteBuffer.allocate(SIZE).putLong(files).putLong(points).putLong(unlabelled).putLong(skipped)
+				.putLong(bytes).array();
+	}
+
+	public void fromBytes(byte[] bytes)
+	throws SerializationException {
+		if(bytes.length != SIZE) {
+			throw new SerializationException("Invalid LabelReport: " + bytes.length + " bytes.");
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		files = buffer.getLong();
+		points = buffer.getLong();
+		unlabelled = buffer.getLong();
+		skipped = buffer.getLong();
+		this.bytes = buffer.getLong();
+	}
+
+	/**
+	  * Adds the report of other label files to this one.
+	  *
+	  * @param other Report of other files.
+	  */
+	public void merge(LabelReport other) {
+		files += other.files;
+		points += other.points;
+		unlabelled += other.unlabelled;
+		skipped += other.skipped;
+		bytes += other.bytes;
+	}
+
+	public long getFiles() {
+		return files;
+	}
+
+	public long getPoints() {
+		return points;
+	}
+
+	public long getUnlabelled() {
+		return unlabelled;
+	}
+
+	public long getSkipped() {
+		return skipped;
+	}
+
+	public long getByteCount() {
+		return bytes;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,157 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.types;
+
+import java.nio.ByteBuffer;
+
+import java.util.Arrays;
+
+import cgl.imr.base.Value;
+import cgl.imr.base.SerializationException;
+
+/**
+  * Work done by map tasks in one iteration, one record per map task.
+  * A map task emits its own record; the reducer concatenates the records of all map tasks so that the driver
+  * receives them through the combiner along with the centroids.
+  */
+public class MapTaskMetrics implements Value {
+
+	/**
+	  * Fields of a record, in their order in the marshalled form: map task number, points that contributed to the
+	  * sums, distance evaluations, bytes of the map output and time spent in map().
+	  */
+	public static final int MAP_TASK = 0;
+	public static final int POINTS = 1;
+	public static final int DISTANCES = 2;
+	public static final int OUTPUT_BYTES = 3;
+	public static final int MAP_NANOS = 4;
+	private static final int FIELDS = 5;
+
+	/**
+	  * Fields of all records, record after record.
+	  */
+	private long[] values;
+
+	/**
+	  * Number of records currently held.
+	  */
+	private int size;
+
+	/**
+	  * Default Constructor.
+	  * Creates an empty list of records.
+	  */
+	public MapTaskMetrics() {
+		values = new long[4 * FIELDS];
+		size = 0;
+	}
+
+	/**
+	  * Converts the records to bytes: the number of records followed by their fields as longs.
+	  *
+	  * @return byte[] The array of bytes from the object.
+	  */
+	public byte[] getBytes()
+	throws SerializationException {
+		ByteBuffer buffer = ByteBuffer.allocate(4 + size * FIELDS * 8);
+		buffer.putInt(size);
+		buffer.asLongBuffer().put(values, 0, size * FIELDS);
+		return buffer.array();
+	}
+
+	/**
+	  * Replaces the records with the ones in an array of bytes produced by getBytes().
+	  *
+	  * @param bytes byte array to convert to the MapTaskMetrics.
+	  */
+	public void fromBytes(byte[] bytes)
+	throws SerializationException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		int length = (bytes.length < 4 ? -1 : buffer.getInt());
+		if(length < 0 || bytes.length != 4 + (long) length * FIELDS * 8) {
+			throw new SerializationException("Invalid MapTaskMetrics length: " + bytes.length + " bytes.");
+		}
+		size = 0;
+		ensureCapacity(length);
+		buffer.asLongBuffer().get(values, 0, length * FIELDS);
+		size = length;
+	}
+
+	/**
+	  * Appends the record of one map task.
+	  *
+	  * @param mapTask Map task number.
+	  * @param points Points that contributed to the sums.
+	  * @param distances Distance evaluations.
+	  * @param outputBytes Bytes of the map output.
+	  * @param mapNanos Time spent in map(), in nanoseconds.
+	  */
+	public void add(long mapTask, long points, long distances, long outputBytes, long mapNanos) {
+		ensureCapacity(size + 1);
+		int base = size * FIELDS;
+		values[base + MAP_TASK] = mapTask;
+		values[base + POINTS] = points;
+		values[base + DISTANCES] = distances;
+		values[base + OUTPUT_BYTES] = outputBytes;
+		values[base + MAP_NANOS] = mapNanos;
+		size++;
+	}
+
+	/**
+	  * Appends all records of another MapTaskMetrics.
+	  *
+	  * @param metrics Records to append.
+	  */
+	public void addAll(MapTaskMetrics metrics) {
+		ensureCapacity(size + metrics.size);
+		System.arraycopy(metrics.values, 0, values, size * FIELDS, metrics.size * FIELDS);
+		size += metrics.size;
+	}
+
+	/**
+	  * Returns a field of a record.
+	  *
+	  * @param index Index of the record.
+	  * @param field One of MAP_TASK, POINTS, DISTANCES, OUTPUT_BYTES and MAP_NANOS.
+	  * @return long Value of the field.
+	  */
+	public long get(int index, int field) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return values[index * FIELDS + field];
+	}
+
+	/**
+	  * Returns the sum of a field over all records.
+	  *
+	  * @param field One of POINTS, DISTANCES, OUTPUT_BYTES and MAP_NANOS.
+	  * @return long Total of the field.
+	  */
+	public long total(int field) {
+		long total = 0;
+		for(int i = 0; i < size; i++) {
+			total += values[i * FIELDS + field];
+		}
+		return total;
+	}
+
+	/**
+	  * Returns the number of records.
+	  *
+	  * @return int Number of map task records.
+	  */
+	public int size() {
+		return size;
+	}
+
+	/**
+	  * Grows the array of fields, if needed, to hold minCapacity records.
+	  */
+	private void ensureCapacity(int minCapacity) {
+		if(values.length < minCapacity * FIELDS) {
+			values = Arrays.copyOf(values, Math.max(minCapacity, 2 * size) * FIELDS);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,175 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.types;
+
+import java.nio.ByteBuffer;
+
+import cgl.imr.base.Value;
+import cgl.imr.base.SerializationException;
+
+/**
+  * One step of the k-means|| seeding (Bahmani et al.), broadcast by the driver to the map tasks of the clustering
+  * job before its first iteration, and the answer of the map tasks to it.
+  * The map tasks keep, for each of their points, the distance to the nearest seed candidate so far. A step is:
+  * PICK, to which every map task answers with one of its points drawn uniformly and its number of points as the
+  * count; UPDATE, which adds candidates and is answered with the cost (sum of the distances) of the partition;
+  * SAMPLE, answered with the points drawn with probability oversampling * distance / cost; and WEIGHT, which
+  * adds the last candidates and is answered with the number of points nearest to every candidate.
+  * The marshalled form starts with a magic number that neither a DataPointVector nor a CentroidDelta starts with,
+  * so map tasks tell seeding steps from centroid broadcasts by their bytes.
+  */
+public class SeedingStep implements Value {
+
+	public static final int PICK = 0;
+	public static final int UPDATE = 1;
+	public static final int SAMPLE = 2;
+	public static final int WEIGHT = 3;
+
+	private static final int MAGIC = 0xCC5EED01;
+
+	/**
+	  * Size of the fixed header: magic, step, first candidate index, random seed, cost and oversampling.
+	  */
+	private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 8 + 8;
+
+	private int step;
+
+	/**
+	  * Index, among all candidates, of the first candidate carried by an UPDATE or WEIGHT step.
+	  */
+	private int first;
+
+	/**
+	  * Seed of the random draws of a PICK or SAMPLE step, combined by each map task with its number.
+	  */
+	private long seed;
+
+	/**
+	  * Total cost of the candidates, given to SAMPLE and returned by UPDATE, and the expected number of points
+	  * drawn by SAMPLE.
+	  */
+	private double cost;
+	private double oversampling;
+
+	/**
+	  * Candidates added by an UPDATE or WEIGHT step, points drawn by PICK or SAMPLE, or the per candidate counts
+	  * returned by WEIGHT.
+	  */
+	private DataPointVector points;
+
+	/**
+	  * Default Constructor, to be followed by fromBytes().
+	  */
+	public SeedingStep() {
+		points = new DataPointVector();
+	}
+
+	/**
+	  * Creates a step.
+	  *
+	  * @param step PICK, UPDATE, SAMPLE or WEIGHT.
+	  * @param first Index of the first candidate in points, for UPDATE and WEIGHT.
+	  * @param seed Seed of the random draws.
+	  * @param cost Cost of the candidates.
+	  * @param oversampling Expected number of points drawn by SAMPLE.
+	  * @param points Points of the step.
+	  */
+	public SeedingStep(int step, int first, long seed, double cost, double oversampling, DataPointVector points) {
+		this.step = step;
+		this.first = first;
+		this.seed = seed;
+		this.cost = cost;
+		this.oversampling = oversampling;
+		this.points = points;
+	}
+
+	/**
+	  * Checks whether marshalled bytes hold a SeedingStep.
+	  *
+	  * @param bytes Marshalled broadcast or map output.
+	  * @return boolean True if the bytes start with the magic number of a SeedingStep.
+	  */
+	public static boolean isSeedingStep(byte[] bytes) {
+		return bytes.length >= HEADER_SIZE && ByteBuffer.wrap(bytes).getInt() == MAGIC;
+	}
+
+	public byte[] getBytes()
+	throws SerializationException {
+		byte[] pointBytes = points.getBytes();
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + pointBytes.length);
+		buffer.putInt(MAGIC).putInt(step).putInt(first).putLong(seed).putDouble(cost).putDouble(oversampling);
+		buffer.put(pointBytes);
+		return buffer.array();
+	}
+
+	public void fromBytes(byte[] bytes)
+	throws SerializationException {
+		if(!isSeedingStep(bytes)) {
+			throw new SerializationException("Invalid SeedingStep: " + bytes.length + " bytes.");
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		buffer.getInt();
+		step = buffer.getInt();
+		first = buffer.getInt();
+		seed = buffer.getLong();
+		cost = buffer.getDouble();
+		oversampling = buffer.getDouble();
+		if(step < PICK || step > WEIGHT || first < 0) {
+			throw new SerializationException("Invalid SeedingStep: step " + step + ", first candidate " + first);
+		}
+		byte[] pointBytes = new byte[buffer.remaining()];
+		buffer.get(pointBytes);
+		points = new DataPointVector();
+		points.fromBytes(pointBytes);
+	}
+
+	/**
+	  * Adds the answer of another map task to this one: the costs are added, and the points are appended,
+	  * or for WEIGHT their counts added.
+	  *
+	  * @param other Answer to the same step.
+	  */
+	public void merge(SeedingStep other) {
+		if(other.step != step) {
+			throw new IllegalArgumentException("Cannot merge step " + other.step + " into step " + step);
+		}
+		cost += other.cost;
+		if(step == WEIGHT) {
+			if(other.points.size() != points.size()) {
+				throw new IllegalArgumentException("Size mismatch: " + other.points.size() + " != " + points.size());
+			}
+			for(int i = 0; i < points.size(); i++) {
+				points.set(i, 0, 0, points.getCount(i) + other.points.getCount(i));
+			}
+		} else {
+			for(int i = 0; i < other.points.size(); i++) {
+				points.add(other.points.getYear(i), other.points.getTemperature(i), other.points.getCount(i));
+			}
+		}
+	}
+
+	public int getStep() {
+		return step;
+	}
+
+	public int getFirst() {
+		return first;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public double getCost() {
+		return cost;
+	}
+
+	public double getOversampling() {
+		return oversampling;
+	}
+
+	public DataPointVector getPoints() {
+		return points;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.types;
+
+import java.nio.ByteBuffer;
+
+import cgl.imr.base.Key;
+import cgl.imr.base.SerializationException;
+
+/**
+  * Key of a shard of the centroid sums emitted by the map tasks of the clustering job: the shard number, and
+  * whether the sums are those of a mini-batch sample, which the reducer turns into learning-rate weighted updates.
+  * Twister sends a key to the reduce task numbered hashCode() mod the number of reduce tasks, so the hash code is
+  * the shard number, and with as many shards as reduce tasks shard i is reduced by reduce task i.
+  */
+public class ShardKey implements Key {
+
+	/**
+	  * Size of the marshalled key: the mini-batch flag and the shard number.
+	  */
+	private static final int SIZE = 4 + 4;
+
+	private boolean miniBatch;
+	private int shard;
+
+	/**
+	  * Default Constructor, to be followed by fromBytes().
+	  */
+	public ShardKey() {
+	}
+
+	/**
+	  * Creates the key of a shard.
+	  *
+	  * @param miniBatch Whether the shard holds the sums of a mini-batch sample.
+	  * @param shard Shard number.
+	  */
+	public ShardKey(boolean miniBatch, int shard) {
+		this.miniBatch = miniBatch;
+		this.shard = shard;
+	}
+
+	public byte[] getBytes() {
+		return ByteBuffer.allocate(SIZE).putInt(miniBatch ? 1 : 0).putInt(shard).array();
+	}
+
+	public void fromBytes(byte[] bytes)
+	throws SerializationException {
+		if(bytes.length != SIZE) {
+			throw new SerializationException("Invalid ShardKey: " + bytes.length + " bytes.");
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		miniBatch = (buffer.getInt() != 0);
+		shard = buffer.getInt();
+		if(shard < 0) {
+			throw new SerializationException("Invalid ShardKey: shard " + shard);
+		}
+	}
+
+	public boolean isMiniBatch() {
+		return miniBatch;
+	}
+
+	public int getShard() {
+		return shard;
+	}
+
+	/**
+	  * Overridden equals method of Object.
+	  * Two keys are equal if they have the same shard number and mini-batch flag.
+	  *
+	  * @param object The passed object to check for equality.
+	  * @return boolean.
+	  */
+	@Override
+	public boolean equals(Object object) {
+		if(!(object instanceof ShardKey)) {
+			return false;
+		}
+		ShardKey other = (ShardKey) object;
+		return (shard == other.shard && miniBatch == other.miniBatch);
+	}
+
+	/**
+	  * Overridden hashCode method of Object Class.
+	  *
+	  * @return int The shard number, which picks the reduce task of the shard.
+	  */
+	@Override
+	public int hashCode() {
+		return shard;
+	}
+
+	public String toString() {
+		return (miniBatch ? "minibatch/" : "sums/") + shard;
+	}
+}
\ No newline at end of file
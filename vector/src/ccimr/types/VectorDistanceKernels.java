@@ -0,0 +1,74 @@
+/**
+  * @author Archit Shukla
+  */
+package ccimr.types;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+  * Distance kernels on the Vector API (jdk.incubator.vector, JDK 16 or later), using the widest vectors of the
+  * platform. Each kernel runs over whole vectors of coordinates and finishes the remaining ones with a scalar loop.
+  * Built by the vector target of the Makefile, apart from the rest of the project, and only used when the JVM runs
+  * with --add-modules jdk.incubator.vector; DistanceMetric otherwise keeps its scalar kernels.
+  */
+class VectorDistanceKernels implements DistanceKernels {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	public double squaredEuclidean(double[] a, int aOffset, double[] b, int bOffset, int dimensions) {
+		DoubleVector sums = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for(int bound = SPECIES.loopBound(dimensions); i < bound; i += SPECIES.length()) {
+			DoubleVector d = DoubleVector.fromArray(SPECIES, a, aOffset + i)
+					.sub(DoubleVector.fromArray(SPECIES, b, bOffset + i));
+			sums = sums.add(d.mul(d));
+		}
+		double sum = sums.reduceLanes(VectorOperators.ADD);
+		for(; i < dimensions; i++) {
+			double d = a[aOffset + i] - b[bOffset + i];
+			sum += d * d;
+		}
+		return sum;
+	}
+
+	public double l1(double[] a, int aOffset, double[] b, int bOffset, int dimensions) {
+		DoubleVector sums = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for(int bound = SPECIES.loopBound(dimensions); i < bound; i += SPECIES.length()) {
+			sums = sums.add(DoubleVector.fromArray(SPECIES, a, aOffset + i)
+					.sub(DoubleVector.fromArray(SPECIES, b, bOffset + i)).abs());
+		}
+		double sum = sums.reduceLanes(VectorOperators.ADD);
+		for(; i < dimensions; i++) {
+			sum += Math.abs(a[aOffset + i] - b[bOffset + i]);
+		}
+		return sum;
+	}
+
+	public double cosine(double[] a, int aOffset, double[] b, int bOffset, int dimensions) {
+		DoubleVector dots = DoubleVector.zero(SPECIES);
+		DoubleVector normsA = DoubleVector.zero(SPECIES);
+		DoubleVector normsB = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for(int bound = SPECIES.loopBound(dimensions); i < bound; i += SPECIES.length()) {
+			DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOffset + i);
+			DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOffset + i);
+			dots = dots.add(va.mul(vb));
+			normsA = normsA.add(va.mul(va));
+			normsB = normsB.add(vb.mul(vb));
+		}
+		double dot = dots.reduceLanes(VectorOperators.ADD);
+		double normA = normsA.reduceLanes(VectorOperators.ADD);
+		double normB = normsB.reduceLanes(VectorOperators.ADD);
+		for(; i < dimensions; i++) {
+			double ai = a[aOffset + i], bi = b[bOffset + i];
+			dot += ai * bi;
+			normA += ai * ai;
+			normB += bi * bi;
+		}
+		double norms = Math.sqrt(normA * normB);
+		return (norms == 0 ? 1 : 1 - dot / norms);
+	}
+}
\ No newline at end of file